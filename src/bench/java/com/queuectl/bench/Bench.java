@@ -0,0 +1,225 @@
+package com.queuectl.bench;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobExecutor;
+import com.queuectl.core.JobResult;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+import com.queuectl.core.WorkerPool;
+import com.queuectl.storage.JobRepository;
+import com.queuectl.storage.SQLiteStorage;
+import com.queuectl.storage.ShardedSQLiteStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * The harnesses behind the throughput figures quoted in the commit log. Each run works in a
+ * fresh temporary directory, so it never touches the configured database.
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:java -Dexec.args="storage 2000"
+ * mvn -Pbench test-compile exec:java -Dexec.args="workers virtual 100"
+ * mvn -Pbench test-compile exec:java -Dexec.args="shell persistent 3000"
+ * mvn -Pbench test-compile exec:java -Dexec.args="shards 4 8 1000"
+ * </pre>
+ *
+ * Plain loops timed with {@link System#nanoTime()}, not JMH: the figures are for comparing
+ * modes on one machine, and they move with the disk and the number of cores.
+ */
+public final class Bench {
+
+    private Bench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Path dir = Files.createTempDirectory("queuectl-bench");
+        ConfigManager cfg = ConfigManager.getInstance();
+        cfg.set("database_path", dir.resolve("bench.db").toString());
+        cfg.set("output_dir", dir.resolve("job-logs").toString());
+        try {
+            switch (args[0]) {
+                case "storage" -> storage(arg(args, 1, 2000));
+                case "workers" -> workers(args.length > 1 ? args[1] : "platform", arg(args, 2, 10));
+                case "shell" -> shell(args.length > 1 ? args[1] : "fork", arg(args, 2, 3000));
+                case "shards" -> shards(arg(args, 1, 4), arg(args, 2, 4), arg(args, 3, 1000));
+                default -> usage();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: storage [jobs] | workers platform|virtual [concurrency]"
+                + " | shell fork|persistent [jobs] | shards [count] [threads] [jobs per thread]");
+    }
+
+    private static int arg(String[] args, int i, int defaultValue) {
+        return args.length > i ? Integer.parseInt(args[i]) : defaultValue;
+    }
+
+    private static double perSecond(long count, long startNanos) {
+        return count / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    // One commit per enqueue, then one job at a time through the single-row updates a worker used to make
+    private static void storage(int jobs) throws Exception {
+        try (JobRepository repo = new SQLiteStorage()) {
+            repo.init();
+            long t = System.nanoTime();
+            for (int i = 0; i < jobs; i++) repo.save(new Job("job-" + i, "echo " + i, 3));
+            double enqueue = perSecond(jobs, t);
+
+            t = System.nanoTime();
+            int done = 0;
+            Optional<Job> job;
+            while ((job = repo.fetchNextPendingJob()).isPresent()) {
+                String id = job.get().getId();
+                repo.updateJobState(id, JobState.PROCESSING);
+                repo.updateJobOutput(id, "x");
+                repo.updateJobState(id, JobState.COMPLETED);
+                done++;
+            }
+            System.out.printf("storage: enqueue %.0f jobs/s, claim + 3 updates %.0f jobs/s (%d jobs)%n",
+                    enqueue, perSecond(done, t), done);
+        }
+    }
+
+    // 3x concurrency 'sleep 0.2' jobs drained by a worker pool; threads counts live platform threads at the end
+    private static void workers(String mode, int concurrency) throws Exception {
+        ConfigManager.getInstance().set("worker_mode", mode);
+        int jobs = concurrency * 3;
+        try (JobRepository repo = new SQLiteStorage()) {
+            repo.init();
+            List<Job> batch = new ArrayList<>(jobs);
+            for (int i = 0; i < jobs; i++) batch.add(new Job("job-" + i, "sleep 0.2", 0));
+            repo.saveAll(batch);
+
+            PrintStream out = System.out;
+            // Workers print a line per job
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long t = System.nanoTime();
+            WorkerPool pool = new WorkerPool(repo, concurrency, 2);
+            double rate;
+            int threads;
+            try {
+                pool.start();
+                while (repo.countByState().getOrDefault(JobState.COMPLETED, 0L) < jobs) Thread.sleep(50);
+                rate = perSecond(jobs, t);
+                threads = Thread.activeCount();
+            } finally {
+                pool.stop();
+                System.setOut(out);
+            }
+            System.out.printf("workers: %s, concurrency %d, %d jobs: %.0f jobs/s, %d live platform threads%n",
+                    mode, concurrency, jobs, rate, threads);
+        }
+    }
+
+    // JobExecutor.run alone, on 1 thread and then 8, with no storage involved
+    private static void shell(String mode, int jobs) throws Exception {
+        ConfigManager.getInstance().set("shell_mode", mode);
+        JobExecutor executor = new JobExecutor();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        double one;
+        double eight;
+        try {
+            // Warm-up: class loading, and the first helpers in persistent mode
+            for (int i = 0; i < 300; i++) executor.run(new Job("warm", "echo hello", 0));
+            long t = System.nanoTime();
+            for (int i = 0; i < jobs; i++) executor.run(new Job("one", "echo hello", 0));
+            one = perSecond(jobs, t);
+
+            ExecutorService threads = Executors.newFixedThreadPool(8);
+            CountDownLatch done = new CountDownLatch(jobs);
+            t = System.nanoTime();
+            for (int i = 0; i < jobs; i++) {
+                threads.submit(() -> {
+                    executor.run(new Job("eight", "echo hello", 0));
+                    done.countDown();
+                });
+            }
+            done.await();
+            eight = perSecond(jobs, t);
+            threads.shutdown();
+        } finally {
+            System.setOut(out);
+        }
+        System.out.printf("shell: %s, 1 thread %.0f jobs/s (%.0f us/job), 8 threads %.0f jobs/s%n",
+                mode, one, 1e6 / one, eight);
+    }
+
+    // Enqueue with one commit per job, then claimBatch(4) + started + completed, from the same number of threads
+    private static void shards(int count, int threads, int perThread) throws Exception {
+        try (JobRepository repo = count == 1 ? new SQLiteStorage() : new ShardedSQLiteStorage(count)) {
+            repo.init();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> running = new ArrayList<>();
+                long t = System.nanoTime();
+                for (int w = 0; w < threads; w++) {
+                    running.add(pool.submit(() -> {
+                        for (int i = 0; i < perThread; i++) repo.save(new Job(UUID.randomUUID().toString(), "echo", 3));
+                        return null;
+                    }));
+                }
+                for (Future<?> f : running) f.get();
+                double enqueue = perSecond((long) threads * perThread, t);
+
+                running.clear();
+                LongAdder done = new LongAdder();
+                t = System.nanoTime();
+                for (int w = 0; w < threads; w++) {
+                    String workerId = "w" + w;
+                    running.add(pool.submit(() -> {
+                        List<Job> claimed;
+                        while (!(claimed = repo.claimBatch(workerId, 4)).isEmpty()) {
+                            List<JobTransition> started = new ArrayList<>();
+                            List<JobTransition> completed = new ArrayList<>();
+                            for (Job j : claimed) {
+                                started.add(JobTransition.started(j));
+                                completed.add(JobTransition.completed(j, new JobResult(0, "ok", null)));
+                            }
+                            repo.applyTransitions(started);
+                            repo.applyTransitions(completed);
+                            done.add(claimed.size());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : running) f.get();
+                System.out.printf("shards: %d shard(s), %d thread(s): enqueue %.0f jobs/s, claim + start + complete %.0f jobs/s%n",
+                        count, threads, enqueue, perSecond(done.sum(), t));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
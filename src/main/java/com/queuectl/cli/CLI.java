@@ -1,7 +1,14 @@
 package com.queuectl.cli;
 
+import com.google.gson.JsonObject;
 import org.apache.commons.cli.*;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public class CLI {
     public static void main(String[] args) {
         Options opts = new Options();
@@ -12,27 +19,50 @@ public class CLI {
         enqueue.setOptionalArg(false);
         opts.addOption(enqueue);
 
+        Option enqueueFile = new Option("f", "enqueue-file", true, "Bulk enqueue newline-delimited JSON jobs from a file");
+        enqueueFile.setArgs(1);
+        opts.addOption(enqueueFile);
+
+        Option enqueueStdin = new Option("i", "enqueue-stdin", false, "Bulk enqueue newline-delimited JSON jobs from stdin");
+        opts.addOption(enqueueStdin);
+
         Option startWorkers = new Option("w", "start-workers", true, "Start worker pool with N workers");
         startWorkers.setArgs(1);
         opts.addOption(startWorkers);
 
-        Option stopWorkers = new Option("x", "stop-workers", false, "Stop all running workers");
+        Option stopWorkers = new Option("x", "stop-workers", false, "Stop the running worker daemon");
         opts.addOption(stopWorkers);
 
         Option status = new Option("s", "status", false, "Show job status summary");
         opts.addOption(status);
 
-        Option list = new Option("l", "list", true, "List jobs by state (PENDING, PROCESSING, COMPLETED, FAILED, DEAD)");
+        Option list = new Option("l", "list", true, "List jobs by state (PENDING, RUNNING, PROCESSING, COMPLETED, FAILED, DEAD)");
         list.setArgs(1);
         opts.addOption(list);
 
         Option dlqList = new Option("d", "dlq-list", false, "List jobs in Dead Letter Queue");
         opts.addOption(dlqList);
 
+        Option limit = new Option("n", "limit", true, "Max rows to print for --list/--dlq-list");
+        limit.setArgs(1);
+        opts.addOption(limit);
+
+        Option after = new Option("a", "after", true, "Resume --list/--dlq-list after this job ID");
+        after.setArgs(1);
+        opts.addOption(after);
+
         Option dlqRetry = new Option("r", "dlq-retry", true, "Retry a job from DLQ by ID");
         dlqRetry.setArgs(1);
         opts.addOption(dlqRetry);
 
+        Option prune = new Option("p", "prune", false, "Archive and delete expired COMPLETED/DLQ jobs, then compact the database");
+        opts.addOption(prune);
+
+        Option metrics = new Option("m", "metrics", true, "Show queue depth and worker metrics (text, or prometheus)");
+        metrics.setArgs(1);
+        metrics.setOptionalArg(true);
+        opts.addOption(metrics);
+
         Option configSet = new Option("c", "config-set", true, "Set config key=value");
         configSet.setArgs(2);
         opts.addOption(configSet);
@@ -50,6 +80,45 @@ public class CLI {
                 return;
             }
 
+            int pageSize = limit(cmd);
+            if (pageSize < 0) {
+                System.err.println("--limit must be a non-negative integer, got: " + cmd.getOptionValue("limit"));
+                formatter.printHelp("queuectl", opts);
+                return;
+            }
+
+            // A running "queuectl -w" answers these from its warm process; otherwise this JVM opens the database itself
+            JsonObject request = controlRequest(cmd, pageSize);
+            if (request != null) {
+                try (ControlClient daemon = ControlClient.connect()) {
+                    if (daemon != null) {
+                        if (cmd.hasOption("enqueue-file")) {
+                            try (BufferedReader body = Files.newBufferedReader(Path.of(cmd.getOptionValue("enqueue-file")), StandardCharsets.UTF_8)) {
+                                daemon.call(request, body);
+                            }
+                        } else if (cmd.hasOption("enqueue-stdin")) {
+                            daemon.call(request, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+                        } else {
+                            daemon.call(request);
+                        }
+                        return;
+                    }
+                }
+            }
+
+            if (cmd.hasOption("stop-workers")) {
+                System.out.println("No worker daemon is running.");
+                return;
+            }
+
+            // An in-memory queue only exists inside the worker process; a fresh one here would be empty and thrown away
+            if (CommandHandler.isEphemeral() && !cmd.hasOption("start-workers") && !cmd.hasOption("config-set")) {
+                System.err.println(ControlClient.socketPath() == null
+                        ? "storage_engine is memory and control_socket is empty, so commands can't reach the workers"
+                        : "storage_engine is memory and no worker daemon is running: start workers with -w and run commands while they are up");
+                return;
+            }
+
             CommandHandler handler = new CommandHandler();
 
             if (cmd.hasOption("enqueue")) {
@@ -58,14 +127,19 @@ public class CLI {
                 return;
             }
 
-            if (cmd.hasOption("start-workers")) {
-                int count = Integer.parseInt(cmd.getOptionValue("start-workers", "1"));
-                handler.handleWorkerStart(count);
+            if (cmd.hasOption("enqueue-file")) {
+                handler.handleEnqueueFile(cmd.getOptionValue("enqueue-file"));
                 return;
             }
 
-            if (cmd.hasOption("stop-workers")) {
-                System.out.println("Stop workers functionality not implemented yet.");
+            if (cmd.hasOption("enqueue-stdin")) {
+                handler.handleEnqueueStdin();
+                return;
+            }
+
+            if (cmd.hasOption("start-workers")) {
+                int count = Integer.parseInt(cmd.getOptionValue("start-workers", "1"));
+                handler.handleWorkerStart(count);
                 return;
             }
 
@@ -76,12 +150,12 @@ public class CLI {
 
             if (cmd.hasOption("list")) {
                 String state = cmd.getOptionValue("list");
-                handler.handleList(state);
+                handler.handleList(state, cmd.getOptionValue("after"), pageSize);
                 return;
             }
 
             if (cmd.hasOption("dlq-list")) {
-                handler.handleDLQList();
+                handler.handleDLQList(cmd.getOptionValue("after"), pageSize);
                 return;
             }
 
@@ -91,6 +165,16 @@ public class CLI {
                 return;
             }
 
+            if (cmd.hasOption("prune")) {
+                handler.handlePrune();
+                return;
+            }
+
+            if (cmd.hasOption("metrics")) {
+                handler.handleMetrics(cmd.getOptionValue("metrics"));
+                return;
+            }
+
             if (cmd.hasOption("config-set")) {
                 String[] values = cmd.getOptionValues("config-set");
                 if (values.length < 2) {
@@ -111,4 +195,51 @@ public class CLI {
             e.printStackTrace();
         }
     }
+
+    // --limit, 0 when absent (no limit), -1 when it isn't a non-negative integer
+    private static int limit(CommandLine cmd) {
+        try {
+            return Math.max(-1, Integer.parseInt(cmd.getOptionValue("limit", "0").trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // The commands a worker daemon can serve, as control socket requests; null for everything else
+    private static JsonObject controlRequest(CommandLine cmd, int limit) {
+        JsonObject req = new JsonObject();
+        if (cmd.hasOption("enqueue")) {
+            req.addProperty("cmd", "enqueue");
+            req.addProperty("job", cmd.getOptionValue("enqueue"));
+        } else if (cmd.hasOption("enqueue-file") || cmd.hasOption("enqueue-stdin")) {
+            // The job lines follow the request on the connection
+            req.addProperty("cmd", "enqueue-stream");
+        } else if (cmd.hasOption("start-workers")) {
+            return null;
+        } else if (cmd.hasOption("stop-workers")) {
+            req.addProperty("cmd", "stop");
+        } else if (cmd.hasOption("status")) {
+            req.addProperty("cmd", "status");
+        } else if (cmd.hasOption("list")) {
+            req.addProperty("cmd", "list");
+            req.addProperty("state", cmd.getOptionValue("list"));
+            req.addProperty("after", cmd.getOptionValue("after"));
+            req.addProperty("limit", limit);
+        } else if (cmd.hasOption("dlq-list")) {
+            req.addProperty("cmd", "dlq-list");
+            req.addProperty("after", cmd.getOptionValue("after"));
+            req.addProperty("limit", limit);
+        } else if (cmd.hasOption("dlq-retry")) {
+            req.addProperty("cmd", "dlq-retry");
+            req.addProperty("id", cmd.getOptionValue("dlq-retry"));
+        } else if (cmd.hasOption("prune")) {
+            req.addProperty("cmd", "prune");
+        } else if (cmd.hasOption("metrics")) {
+            req.addProperty("cmd", "metrics");
+            req.addProperty("format", cmd.getOptionValue("metrics"));
+        } else {
+            return null;
+        }
+        return req;
+    }
 }
\ No newline at end of file
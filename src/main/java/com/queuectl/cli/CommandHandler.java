@@ -2,70 +2,210 @@ package com.queuectl.cli;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.queuectl.core.ConfigManager;
 import com.queuectl.core.Job;
 import com.queuectl.core.JobState;
+import com.queuectl.core.Metrics;
+import com.queuectl.core.Retention;
+import com.queuectl.storage.CachingJobRepository;
+import com.queuectl.storage.GroupCommitRepository;
+import com.queuectl.storage.InMemoryJobRepository;
 import com.queuectl.storage.JobRepository;
+import com.queuectl.storage.JournalJobRepository;
 import com.queuectl.storage.SQLiteStorage;
+import com.queuectl.storage.ShardedSQLiteStorage;
 import com.queuectl.core.WorkerPool;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class CommandHandler {
     private final JobRepository repo;
+    // Set by openRepository when job_cache_size > 0
+    private CachingJobRepository cache;
 
     public CommandHandler() throws Exception {
-        this.repo = new SQLiteStorage();
+        this.repo = openRepository();
         this.repo.init();
     }
 
+    // Over a store the caller has opened and will close
+    CommandHandler(JobRepository repo) {
+        this.repo = repo;
+    }
+
+    // storage_engine: "sqlite" (default), "journal", or "memory"; memory jobs live and die with the worker process
+    static boolean isEphemeral() {
+        return ConfigManager.getInstance().get("storage_engine", "sqlite").equalsIgnoreCase("memory");
+    }
+
+    // commit_mode: "direct" writes every state change immediately; "sync"/"async" group-commit them
+    private JobRepository openRepository() {
+        ConfigManager cfg = ConfigManager.getInstance();
+        // Nothing to make durable, so nothing to group-commit
+        if (isEphemeral()) return new InMemoryJobRepository();
+        // The journal has its own fsync policy (journal_fsync)
+        if (cfg.get("storage_engine", "sqlite").equalsIgnoreCase("journal")) return new JournalJobRepository();
+        // shard_count: SQLite files the jobs are spread over; 1 keeps everything in database_path
+        int shards = cfg.getInt("shard_count", 1);
+        JobRepository storage = shards > 1 ? new ShardedSQLiteStorage(shards) : new SQLiteStorage();
+        // job_cache_size: jobs kept for findById/getJobState lookups; under group commit so it sees every row update
+        int cacheSize = cfg.getInt("job_cache_size", 0);
+        if (cacheSize > 0) {
+            cache = new CachingJobRepository(storage, cacheSize, cfg.getInt("job_cache_ttl_ms", 5000));
+            storage = cache;
+        }
+        String mode = cfg.get("commit_mode", "sync").toLowerCase();
+        if (mode.equals("direct")) return storage;
+
+        GroupCommitRepository.Durability durability = mode.equals("async")
+                ? GroupCommitRepository.Durability.ASYNC
+                : GroupCommitRepository.Durability.SYNC;
+        return new GroupCommitRepository(storage, durability,
+                cfg.getInt("commit_interval_ms", 5), cfg.getInt("commit_max_records", 256));
+    }
+
     public void handleEnqueue(String jobJson) throws Exception {
+        handleEnqueue(jobJson, System.out, System.err);
+    }
+
+    // The PrintStream overloads let the control socket stream a command's output back to the client
+    void handleEnqueue(String jobJson, PrintStream out, PrintStream err) throws Exception {
         Gson g = new Gson();
         JsonObject obj = g.fromJson(jobJson, JsonObject.class);
 
+        Job job = toJob(obj);
+        if (job == null) {
+            err.println("enqueue requires a 'command' field");
+            return;
+        }
+
+        repo.save(job);
+        Metrics.getInstance().recordEnqueued(1);
+        if (workerPool != null) workerPool.signal();
+        out.printf("Enqueued job id=%s command=\"%s\"%n", job.getId(), job.getCommand());
+    }
+
+    public void handleEnqueueFile(String path) throws Exception {
+        try (Reader in = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+            handleEnqueueStream(in, System.out, System.err);
+        }
+    }
+
+    public void handleEnqueueStdin() throws Exception {
+        handleEnqueueStream(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out, System.err);
+    }
+
+    // Newline-delimited JSON, one job object per line, inserted in chunked transactions
+    void handleEnqueueStream(Reader in, PrintStream out, PrintStream err) throws Exception {
+        int chunkSize = Math.max(1, ConfigManager.getInstance().getInt("enqueue_batch_size", 1000));
+        Gson g = new Gson();
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+
+        List<Job> chunk = new ArrayList<>(chunkSize);
+        long enqueued = 0;
+        long skipped = 0;
+        long start = System.nanoTime();
+
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            Job job = toJob(g.fromJson(reader, JsonObject.class));
+            if (job == null) {
+                skipped++;
+                continue;
+            }
+            chunk.add(job);
+            if (chunk.size() >= chunkSize) {
+                repo.saveAll(chunk);
+                Metrics.getInstance().recordEnqueued(chunk.size());
+                enqueued += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            repo.saveAll(chunk);
+            Metrics.getInstance().recordEnqueued(chunk.size());
+            enqueued += chunk.size();
+        }
+        if (workerPool != null) workerPool.signal();
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        out.printf("Enqueued %d job(s) in %.2fs (%.0f jobs/sec)%n",
+                enqueued, seconds, seconds > 0 ? enqueued / seconds : enqueued);
+        if (skipped > 0) {
+            err.printf("Skipped %d entr%s without a 'command' field%n", skipped, skipped == 1 ? "y" : "ies");
+        }
+    }
+
+    private Job toJob(JsonObject obj) {
+        if (obj == null) return null;
+
         String id = obj.has("id") ? obj.get("id").getAsString() : UUID.randomUUID().toString();
         String command = obj.has("command") ? obj.get("command").getAsString() : null;
 
-        if (command == null || command.isBlank()) {
-            System.err.println("enqueue requires a 'command' field");
-            return;
-        }
+        if (command == null || command.isBlank()) return null;
 
         int maxRetries = obj.has("max_retries")
                 ? obj.get("max_retries").getAsInt()
                 : ConfigManager.getInstance().getInt("max_retries", 3);
 
         Job job = new Job(id, command, maxRetries);
-        repo.save(job);
-        System.out.printf("Enqueued job id=%s command=\"%s\"%n", id, command);
+        if (obj.has("queue") && !obj.get("queue").getAsString().isBlank()) job.setQueue(obj.get("queue").getAsString());
+        if (obj.has("priority")) job.setPriority(obj.get("priority").getAsInt());
+        if (obj.has("timeout")) job.setTimeoutSeconds(obj.get("timeout").getAsInt());
+        return job;
+    }
+
+    public void handleList(String stateName, String afterId, int limit) throws Exception {
+        handleList(stateName, afterId, limit, System.out);
     }
 
-    public void handleList(String stateName) throws Exception {
+    void handleList(String stateName, String afterId, int limit, PrintStream out) throws Exception {
         JobState state = JobState.valueOf(stateName.toUpperCase());
-        List<Job> jobs = repo.listByState(state);
+        // Rows are printed as they are read, so memory stays flat and output starts immediately
+        String[] last = new String[1];
+        int printed = repo.forEachByState(state, afterId, limit, job -> {
+            if (last[0] == null) {
+                out.printf("Jobs in state: %s%n", state);
+                out.println("--------------------------------------------------");
+            }
+            out.printf("ID: %-10s | CMD: %-20s | Attempts: %d/%d | Queue: %s | Priority: %d%n",
+                    job.getId(), job.getCommand(), job.getAttempts(), job.getMaxRetries(), job.getQueue(), job.getPriority());
+            last[0] = job.getId();
+        });
 
-        if (jobs.isEmpty()) {
-            System.out.println("No jobs found in state: " + state);
+        if (printed == 0) {
+            out.println("No jobs found in state: " + state);
             return;
         }
-
-        System.out.printf("Jobs in state: %s%n", state);
-        System.out.println("--------------------------------------------------");
-        for (Job job : jobs) {
-            System.out.printf("ID: %-10s | CMD: %-20s | Attempts: %d/%d%n",
-                    job.getId(), job.getCommand(), job.getAttempts(), job.getMaxRetries());
+        if (limit > 0 && printed == limit) {
+            out.println("Next page: --after " + last[0]);
         }
     }
 
     public void handleStatus() throws Exception {
-        Map<JobState, Long> counts = new EnumMap<>(JobState.class);
-        for (JobState s : JobState.values()) {
-            counts.put(s, (long) repo.listByState(s).size());
-        }
+        handleStatus(System.out);
+    }
+
+    void handleStatus(PrintStream out) throws Exception {
+        Map<JobState, Long> counts = repo.countByState();
 
-        System.out.println("Job Status Summary:");
-        System.out.println("-------------------------");
+        out.println("Job Status Summary:");
+        out.println("-------------------------");
         for (var entry : counts.entrySet()) {
-            System.out.printf("%-10s : %d%n", entry.getKey(), entry.getValue());
+            out.printf("%-10s : %d%n", entry.getKey(), entry.getValue());
+        }
+        if (cache != null) {
+            out.printf("Job cache  : %d entries, %d hits, %d misses (%d stale), %d evicted, %d expired%n",
+                    cache.getSize(), cache.getHitCount(), cache.getMissCount(), cache.getStaleCount(),
+                    cache.getEvictionCount(), cache.getExpiredCount());
         }
     }
 
@@ -74,10 +214,38 @@ public class CommandHandler {
         WorkerPool pool = new WorkerPool(repo, count, baseBackoff);
         System.out.printf("Starting %d worker(s)...%n", count);
         pool.start();
+        // Jobs enqueued over the control socket wake idle workers directly
+        this.workerPool = pool;
+
+        ControlServer control = null;
+        Path socket = ControlClient.socketPath();
+        if (socket != null) {
+            control = ControlServer.start(socket, this);
+            if (control == null) System.err.println("Another worker daemon is listening on " + socket + "; not serving commands here");
+            else System.out.println("Listening for commands on " + socket);
+        }
+        ControlServer controlServer = control;
+
+        // metrics_port: serve /metrics for Prometheus on localhost; 0 disables
+        int metricsPort = ConfigManager.getInstance().getInt("metrics_port", 0);
+        MetricsServer metricsServer = metricsPort > 0 ? MetricsServer.start(metricsPort, this) : null;
+        if (metricsServer != null) System.out.println("Serving metrics on http://127.0.0.1:" + metricsPort + "/metrics");
+
+        // Optional background retention in the worker process (retention_interval_minutes > 0)
+        Retention retention = new Retention(repo);
+        Thread retentionThread = new Thread(retention, "queuectl-retention");
+        retentionThread.setDaemon(true);
+        if (retention.isScheduled()) retentionThread.start();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\nShutting down workers gracefully...");
+            if (controlServer != null) controlServer.close();
+            if (metricsServer != null) metricsServer.close();
+            retention.stop();
+            retentionThread.interrupt();
+            try { retentionThread.join(5000); } catch (InterruptedException ignored) {}
             pool.stop();
+            try { repo.close(); } catch (Exception ignored) {}
         }));
 
         // Keep main thread alive
@@ -86,41 +254,106 @@ public class CommandHandler {
         }
     }
 
-    public void handleDLQList() throws Exception {
-    List<Job> dlqJobs = repo.listDLQ();  // CHANGED THIS LINE
-    if (dlqJobs.isEmpty()) {
-        System.out.println("No jobs in Dead Letter Queue.");
-        return;
+    public void handleMetrics(String format) throws Exception {
+        handleMetrics(format, System.out);
     }
 
-    System.out.println("Dead Letter Queue Jobs:");
-    System.out.println("--------------------------------------------------");
-    for (Job job : dlqJobs) {
-        System.out.printf("ID: %-36s | CMD: %-30s%n",
-                job.getId(), job.getCommand());
+    // Queue depth comes from storage; latencies and counters only exist inside a running worker process
+    void handleMetrics(String format, PrintStream out) throws Exception {
+        if (format != null && format.equalsIgnoreCase("prometheus")) {
+            out.print(prometheus());
+            return;
+        }
+        if (format != null && !format.equalsIgnoreCase("text")) {
+            out.println("Unknown metrics format: " + format + " (use text or prometheus)");
+            return;
+        }
+        out.println("Queue depth:");
+        for (var entry : repo.countByState().entrySet()) {
+            out.printf("  %-10s : %d%n", entry.getKey(), entry.getValue());
+        }
+        out.printf("  %-10s : %d%n", "DLQ", repo.countDLQ());
+        if (workerPool == null) {
+            out.println("No worker daemon is running; latency, transition and worker metrics live in its process.");
+            return;
+        }
+        Metrics.getInstance().writeText(out);
+        if (cache != null) {
+            out.printf("Job cache: %d hits, %d misses (%d stale)%n",
+                    cache.getHitCount(), cache.getMissCount(), cache.getStaleCount());
+        }
     }
-}
-    public void handleDLQRetry(String jobId) throws Exception {
-    Optional<Job> jobOpt = repo.findInDLQ(jobId); // CHANGED
-    if (jobOpt.isEmpty()) {
-        System.err.println("Job not found in DLQ: " + jobId);
-        return;
+
+    String prometheus() throws Exception {
+        StringBuilder sb = new StringBuilder(8192);
+        sb.append("# HELP queuectl_jobs Jobs in each state\n");
+        sb.append("# TYPE queuectl_jobs gauge\n");
+        for (var entry : repo.countByState().entrySet()) {
+            sb.append("queuectl_jobs{state=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+        sb.append("# HELP queuectl_dlq_jobs Jobs in the dead letter queue\n");
+        sb.append("# TYPE queuectl_dlq_jobs gauge\n");
+        sb.append("queuectl_dlq_jobs ").append(repo.countDLQ()).append('\n');
+        if (workerPool != null) Metrics.getInstance().writePrometheus(sb);
+        if (cache != null) {
+            Metrics.counter(sb, "queuectl_job_cache_hits_total", "Job cache lookups served from memory", cache.getHitCount());
+            Metrics.counter(sb, "queuectl_job_cache_misses_total", "Job cache lookups that read the row", cache.getMissCount());
+            Metrics.counter(sb, "queuectl_job_cache_stale_total", "Cached jobs found changed by another process", cache.getStaleCount());
+            Metrics.counter(sb, "queuectl_job_cache_evictions_total", "Cached jobs evicted for space", cache.getEvictionCount());
+        }
+        return sb.toString();
     }
 
-    Job job = jobOpt.get();
-    
-    // Remove from DLQ
-    repo.deleteFromDLQ(job.getId()); // CHANGED
+    public void handlePrune() throws Exception {
+        handlePrune(System.out);
+    }
+
+    void handlePrune(PrintStream out) throws Exception {
+        Retention.Report r = new Retention(repo).runOnce();
+        out.printf("Removed %d completed job(s) and %d DLQ entries%n", r.completedDeleted, r.dlqDeleted);
+        if (r.archive != null) out.println("Archived to " + r.archive);
+        out.printf("Freed %d page(s)%n", r.pagesFreed);
+    }
+
+    public void handleDLQList(String afterId, int limit) throws Exception {
+        handleDLQList(afterId, limit, System.out);
+    }
+
+    void handleDLQList(String afterId, int limit, PrintStream out) throws Exception {
+        String[] last = new String[1];
+        int printed = repo.forEachInDLQ(afterId, limit, job -> {
+            if (last[0] == null) {
+                out.println("Dead Letter Queue Jobs:");
+                out.println("--------------------------------------------------");
+            }
+            out.printf("ID: %-36s | CMD: %-30s%n", job.getId(), job.getCommand());
+            last[0] = job.getId();
+        });
+
+        if (printed == 0) {
+            out.println("No jobs in Dead Letter Queue.");
+            return;
+        }
+        if (limit > 0 && printed == limit) {
+            out.println("Next page: --after " + last[0]);
+        }
+    }
 
-    // Reset for retry
-    job.setState(JobState.PENDING);
-    job.setAttempts(0);
-    job.setLastError(null);
+    public void handleDLQRetry(String jobId) throws Exception {
+        handleDLQRetry(jobId, System.out, System.err);
+    }
 
-    repo.save(job);
+    void handleDLQRetry(String jobId, PrintStream out, PrintStream err) throws Exception {
+        // Comes back with its queue, priority, timeout and retry budget, and no attempts used
+        Optional<Job> job = repo.retryFromDLQ(jobId);
+        if (job.isEmpty()) {
+            err.println("Job not found in DLQ: " + jobId);
+            return;
+        }
+        if (workerPool != null) workerPool.signal();
 
-    System.out.printf("Moved job %s back to queue for retry.%n", job.getId());
-}
+        out.printf("Moved job %s back to queue for retry.%n", job.get().getId());
+    }
 
 
 
@@ -130,11 +363,12 @@ public class CommandHandler {
         System.out.printf("Updated config: %s = %s%n", key, value);
     }
 
-    private WorkerPool workerPool;
+    // Set by the thread that starts the workers, read by control socket threads serving enqueue/status/metrics
+    private volatile WorkerPool workerPool;
 
     public void startWorkers(int count) throws Exception {
         if (workerPool == null) {
-            int baseBackoff = ConfigManager.getInstance().getInt("base_backoff_ms", 1000);
+            int baseBackoff = ConfigManager.getInstance().getInt("base_backoff", 2);
             workerPool = new WorkerPool(repo, count, baseBackoff);
             workerPool.start();
         } else {
@@ -0,0 +1,105 @@
+package com.queuectl.cli;
+
+import com.google.gson.JsonObject;
+import com.queuectl.core.ConfigManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** CLI side of the {@link ControlServer} protocol. */
+class ControlClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final BufferedReader in;
+    private final OutputStream out;
+
+    private ControlClient(SocketChannel channel) {
+        this.channel = channel;
+        this.in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        this.out = Channels.newOutputStream(channel);
+    }
+
+    // control_socket: where a running "queuectl -w" listens; empty disables the daemon path
+    static Path socketPath() {
+        String p = ConfigManager.getInstance().get("control_socket", "queuectl.sock");
+        return p.isBlank() ? null : Path.of(p);
+    }
+
+    // Null when no daemon is running, so the caller falls back to opening the database itself
+    static ControlClient connect() {
+        Path path = socketPath();
+        if (path == null || !Files.exists(path)) return null;
+        try {
+            SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                ch.connect(UnixDomainSocketAddress.of(path));
+                return new ControlClient(ch);
+            } catch (IOException e) {
+                ch.close();
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static boolean isListening(Path path) {
+        try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            ch.connect(UnixDomainSocketAddress.of(path));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Sends one request and copies the daemon's reply to this process's stdout/stderr
+    void call(JsonObject request) throws IOException {
+        call(request, null);
+    }
+
+    // With a body, its non-blank lines follow the request, ended by an empty line (enqueue-stream)
+    void call(JsonObject request, BufferedReader body) throws IOException {
+        // Not closed: that would close the channel
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        w.write(request.toString());
+        w.write('\n');
+        if (body != null) {
+            String line;
+            while ((line = body.readLine()) != null) {
+                if (line.isBlank()) continue;
+                w.write(line);
+                w.write('\n');
+            }
+            w.write('\n');
+        }
+        w.flush();
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals("0")) return;
+            String text = line.length() > 2 ? line.substring(2) : "";
+            if (line.startsWith("2")) System.err.println(text);
+            else System.out.println(text);
+        }
+        throw new EOFException("Worker daemon closed the connection");
+    }
+
+    @Override
+    public void close() {
+        try { channel.close(); } catch (IOException ignored) {}
+    }
+}
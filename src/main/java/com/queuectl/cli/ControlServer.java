@@ -0,0 +1,252 @@
+package com.queuectl.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Control socket of a running {@code queuectl -w}, so enqueue/status/list/stop are served
+ * by the warm worker process instead of each command booting storage in a fresh JVM.
+ *
+ * <p>The protocol is plain lines, usable from {@code nc -U} or {@code socat}: a request
+ * is one JSON object such as {@code {"cmd":"status"}}, and the reply is the command's
+ * output with each line prefixed {@code "1 "} (stdout) or {@code "2 "} (stderr), ended
+ * by a line holding just {@code 0}. A connection may send any number of requests.
+ *
+ * <p>{@code enqueue-stream} is the one request with a body: the NDJSON job lines follow it
+ * on the connection, ended by an empty line, and the reply comes once they are all in.
+ */
+class ControlServer implements Closeable {
+
+    private final Path path;
+    private final ServerSocketChannel server;
+    private final CommandHandler handler;
+    private final Thread acceptor;
+
+    private ControlServer(Path path, ServerSocketChannel server, CommandHandler handler) {
+        this.path = path;
+        this.server = server;
+        this.handler = handler;
+        this.acceptor = new Thread(this::acceptLoop, "queuectl-control");
+        this.acceptor.setDaemon(true);
+    }
+
+    // Returns null if another daemon already owns the socket
+    static ControlServer start(Path path, CommandHandler handler) throws IOException {
+        if (Files.exists(path)) {
+            if (ControlClient.isListening(path)) return null;
+            // Left behind by a daemon that was killed; nothing is listening on it
+            Files.delete(path);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        ControlServer cs = new ControlServer(path, server, handler);
+        cs.acceptor.start();
+        return cs;
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel client = server.accept();
+                Thread.ofVirtual().name("queuectl-control-client").start(() -> serve(client));
+            } catch (IOException e) {
+                if (server.isOpen()) System.err.println("Control socket accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        Gson g = new Gson();
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(client))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Reply reply = new Reply(raw);
+                Body body = new Body(in);
+                boolean stop = false;
+                try {
+                    JsonObject req = g.fromJson(line, JsonObject.class);
+                    stop = dispatch(req, body, reply.out, reply.err);
+                } catch (JsonSyntaxException | IllegalArgumentException | NullPointerException e) {
+                    reply.err.println("Bad request: " + e.getMessage());
+                } catch (Exception e) {
+                    reply.err.println("Error: " + e.getMessage());
+                }
+                // A stream that failed part way still has lines coming; they aren't requests
+                if (body.started) body.drain();
+                reply.finish();
+                if (stop) {
+                    // Exit from another thread so this reply isn't cut off; the shutdown hook drains the workers
+                    new Thread(() -> System.exit(0), "queuectl-stop").start();
+                    return;
+                }
+            }
+        } catch (IOException ignored) {
+            // Client went away mid-reply
+        }
+    }
+
+    // Returns true when the daemon should shut down after replying
+    private boolean dispatch(JsonObject req, Body body, PrintStream out, PrintStream err) throws Exception {
+        String cmd = req.get("cmd").getAsString();
+        switch (cmd) {
+            case "ping" -> out.println("pong");
+            case "enqueue" -> handler.handleEnqueue(req.get("job").getAsString(), out, err);
+            case "enqueue-stream" -> {
+                body.started = true;
+                handler.handleEnqueueStream(body, out, err);
+            }
+            case "status" -> handler.handleStatus(out);
+            case "list" -> handler.handleList(req.get("state").getAsString(), string(req, "after"), limit(req), out);
+            case "dlq-list" -> handler.handleDLQList(string(req, "after"), limit(req), out);
+            case "dlq-retry" -> handler.handleDLQRetry(req.get("id").getAsString(), out, err);
+            case "metrics" -> handler.handleMetrics(string(req, "format"), out);
+            case "prune" -> handler.handlePrune(out);
+            case "stop" -> {
+                out.println("Stopping workers...");
+                return true;
+            }
+            default -> err.println("Unknown command: " + cmd);
+        }
+        return false;
+    }
+
+    private static String string(JsonObject req, String key) {
+        return req.has(key) && !req.get(key).isJsonNull() ? req.get(key).getAsString() : null;
+    }
+
+    private static int limit(JsonObject req) {
+        return req.has("limit") ? req.get("limit").getAsInt() : 0;
+    }
+
+    @Override
+    public void close() {
+        try { server.close(); } catch (IOException ignored) {}
+        try { Files.deleteIfExists(path); } catch (IOException ignored) {}
+    }
+
+    /** The lines following an enqueue-stream request, up to the empty line that ends them. */
+    private static final class Body extends Reader {
+        private final BufferedReader in;
+        private String line = "";
+        private int pos;
+        private boolean done;
+        boolean started;
+
+        Body(BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            while (pos == line.length()) {
+                if (done || !next()) return -1;
+            }
+            int n = Math.min(len, line.length() - pos);
+            line.getChars(pos, pos + n, buf, off);
+            pos += n;
+            return n;
+        }
+
+        private boolean next() throws IOException {
+            String l = in.readLine();
+            if (l == null || l.isEmpty()) {
+                done = true;
+                return false;
+            }
+            line = l + "\n";
+            pos = 0;
+            return true;
+        }
+
+        void drain() throws IOException {
+            while (!done) next();
+        }
+
+        // The connection outlives the body
+        @Override
+        public void close() {
+        }
+    }
+
+    /** One reply: both streams share the connection, each line tagged with the stream it belongs to. */
+    private static final class Reply {
+        private final OutputStream raw;
+        final PrintStream out;
+        final PrintStream err;
+
+        Reply(OutputStream raw) {
+            this.raw = raw;
+            this.out = new PrintStream(new Tagged(raw, (byte) '1'), false, StandardCharsets.UTF_8);
+            this.err = new PrintStream(new Tagged(raw, (byte) '2'), false, StandardCharsets.UTF_8);
+        }
+
+        void finish() throws IOException {
+            out.close();
+            err.close();
+            synchronized (raw) {
+                raw.write(new byte[]{'0', '\n'});
+                raw.flush();
+            }
+        }
+    }
+
+    /** Buffers one line at a time and writes it out with its stream tag in front. */
+    private static final class Tagged extends OutputStream {
+        private final OutputStream raw;
+        private final byte tag;
+        private byte[] line = new byte[256];
+        private int len;
+
+        Tagged(OutputStream raw, byte tag) {
+            this.raw = raw;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n') {
+                emit();
+                return;
+            }
+            if (len == line.length) line = Arrays.copyOf(line, len * 2);
+            line[len++] = (byte) b;
+        }
+
+        private void emit() throws IOException {
+            synchronized (raw) {
+                raw.write(tag);
+                raw.write(' ');
+                raw.write(line, 0, len);
+                raw.write('\n');
+            }
+            len = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (len > 0) emit();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.queuectl.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/** {@code GET /metrics} in Prometheus text format, on the loopback interface of a running {@code queuectl -w}. */
+class MetricsServer implements Closeable {
+
+    private final HttpServer server;
+    private final CommandHandler handler;
+
+    private MetricsServer(HttpServer server, CommandHandler handler) {
+        this.server = server;
+        this.handler = handler;
+    }
+
+    static MetricsServer start(int port, CommandHandler handler) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        MetricsServer ms = new MetricsServer(server, handler);
+        server.createContext("/metrics", ms::serve);
+        // Scrapes are rare; the server's own dispatcher thread answers them
+        server.setExecutor(null);
+        server.start();
+        return ms;
+    }
+
+    // The bound port, for a server started on port 0
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void serve(HttpExchange ex) throws IOException {
+        try (ex) {
+            if (!ex.getRequestMethod().equals("GET") && !ex.getRequestMethod().equals("HEAD")) {
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            int status = 200;
+            try {
+                body = handler.prometheus().getBytes(StandardCharsets.UTF_8);
+            } catch (Exception e) {
+                body = ("Failed to collect metrics: " + e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8);
+                status = 500;
+            }
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            if (ex.getRequestMethod().equals("HEAD")) {
+                ex.sendResponseHeaders(status, -1);
+                return;
+            }
+            ex.sendResponseHeaders(status, body.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,59 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+
+/**
+ * Turns commits made by other processes into {@link JobSignal} wakeups.
+ * Polls the repository's cheap change counter instead of the jobs table,
+ * backing off exponentially while nothing changes.
+ */
+public class ChangeWatcher implements Runnable {
+
+    private final JobRepository repository;
+    private final JobSignal signal;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private volatile boolean running = true;
+
+    public ChangeWatcher(JobRepository repository, JobSignal signal, long minIntervalMs, long maxIntervalMs) {
+        this.repository = repository;
+        this.signal = signal;
+        this.minIntervalMs = Math.max(1, minIntervalMs);
+        this.maxIntervalMs = Math.max(this.minIntervalMs, maxIntervalMs);
+    }
+
+    @Override
+    public void run() {
+        long interval = minIntervalMs;
+        long lastVersion = -1;
+
+        while (running) {
+            try {
+                long version = repository.dataVersion();
+                if (lastVersion != -1 && version != lastVersion) {
+                    signal.signalAll();
+                    interval = minIntervalMs;
+                } else {
+                    interval = Math.min(interval * 2, maxIntervalMs);
+                }
+                lastVersion = version;
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.err.println("Change watcher error: " + e.getMessage());
+                try {
+                    Thread.sleep(maxIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
@@ -0,0 +1,94 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The only thread in a platform-mode pool that claims work. Jobs are claimed in batches
+ * sized to the free space in the bounded hand-off queue, so the number of claim
+ * transactions no longer grows with the number of workers.
+ */
+public class Dispatcher implements Runnable {
+
+    private final String dispatcherId;
+    private final JobRepository repository;
+    private final BlockingQueue<Job> handoff;
+    private final int batchSize;
+    private final JobSignal signal;
+    private final IdleWaiter idleWaiter;
+    private final Metrics metrics = Metrics.getInstance();
+    private volatile boolean running = true;
+
+    public Dispatcher(String dispatcherId, JobRepository repository, BlockingQueue<Job> handoff,
+                      int batchSize, JobSignal signal) {
+        this.dispatcherId = dispatcherId;
+        this.repository = repository;
+        this.handoff = handoff;
+        this.batchSize = Math.max(1, batchSize);
+        this.signal = signal;
+        this.idleWaiter = new IdleWaiter(repository, signal);
+    }
+
+    @Override
+    public void run() {
+        System.out.println("Dispatcher " + dispatcherId + " started.");
+        List<Job> pending = new ArrayList<>();
+
+        while (running) {
+            try {
+                // Read the generation before claiming so an enqueue racing with an empty claim still wakes us
+                long seen = signal.generation();
+                int wanted = Math.min(batchSize, Math.max(1, handoff.remainingCapacity()));
+                long claimStart = System.nanoTime();
+                List<Job> claimed = repository.claimBatch(dispatcherId, wanted);
+                metrics.recordClaim(claimed, System.nanoTime() - claimStart);
+                pending.addAll(claimed);
+
+                if (pending.isEmpty()) {
+                    idleWaiter.await(seen);
+                    continue;
+                }
+                idleWaiter.reset();
+
+                // put() blocks while executors are saturated, which throttles claiming
+                while (!pending.isEmpty()) {
+                    handoff.put(pending.get(0));
+                    pending.remove(0);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.err.println("Dispatcher " + dispatcherId + " error: " + e.getMessage());
+            }
+        }
+
+        // Hand claimed-but-unstarted jobs back to the queue so another process can pick them up
+        handoff.drainTo(pending);
+        release(pending);
+        System.out.println("Dispatcher " + dispatcherId + " stopped gracefully.");
+    }
+
+    private void release(List<Job> jobs) {
+        if (jobs.isEmpty()) return;
+
+        boolean interrupted = Thread.interrupted();
+        List<String> ids = new ArrayList<>();
+        for (Job job : jobs) ids.add(job.getId());
+        try {
+            repository.releaseJobs(ids);
+            System.out.println("Dispatcher " + dispatcherId + " released " + ids.size() + " unstarted job(s).");
+        } catch (Exception e) {
+            System.err.println("Dispatcher " + dispatcherId + " failed to release jobs: " + e.getMessage());
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
@@ -0,0 +1,46 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Idle wait shared by every claim loop: block on the {@link JobSignal} with an
+ * exponentially growing safety-net timeout, never sleeping past the next delayed retry.
+ */
+class IdleWaiter {
+
+    private final JobRepository repository;
+    private final JobSignal signal;
+    private final long minWaitMs;
+    private final long maxWaitMs;
+    private long idleWait;
+
+    IdleWaiter(JobRepository repository, JobSignal signal) {
+        this.repository = repository;
+        this.signal = signal;
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.minWaitMs = Math.max(1, cfg.getInt("idle_min_wait_ms", 50));
+        this.maxWaitMs = Math.max(minWaitMs, cfg.getInt("idle_max_wait_ms", 5000));
+        this.idleWait = minWaitMs;
+    }
+
+    void await(long seenGeneration) throws Exception {
+        long wait = idleWait;
+        Optional<Instant> nextRun = repository.nextScheduledRunAt();
+        if (nextRun.isPresent()) {
+            long untilDue = Duration.between(Instant.now(), nextRun.get()).toMillis();
+            wait = Math.max(1, Math.min(wait, untilDue));
+        }
+        if (signal.awaitChange(seenGeneration, wait)) {
+            idleWait = minWaitMs;
+        } else {
+            idleWait = Math.min(idleWait * 2, maxWaitMs);
+        }
+    }
+
+    void reset() {
+        idleWait = minWaitMs;
+    }
+}
@@ -4,6 +4,8 @@ import java.time.Instant;
 import java.util.Objects;
 
 public class Job {
+    public static final String DEFAULT_QUEUE = "default";
+
     private String id;
     private String command;
     private JobState state;
@@ -14,6 +16,12 @@ public class Job {
     private Instant nextRunAt;
     private String lastError;
     private String output;
+    private String outputPath;
+    private String queue = DEFAULT_QUEUE;
+    private int priority;
+    private int timeoutSeconds;
+    private long version;
+    private String workerId;
 
     public Job(String id, String command, int maxRetries) {
         this.id = id;
@@ -35,6 +43,7 @@ public class Job {
     public void setAttempts(int attempts) { this.attempts = attempts; setUpdatedAt(Instant.now()); }
     public int getMaxRetries() { return maxRetries; }
     public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
     public Instant getNextRunAt() { return nextRunAt; }
@@ -43,6 +52,22 @@ public class Job {
     public void setLastError(String lastError) { this.lastError = lastError; setUpdatedAt(Instant.now()); }
     public String getOutput() { return output; }
     public void setOutput(String output) { this.output = output; setUpdatedAt(Instant.now()); }
+    public String getOutputPath() { return outputPath; }
+    public void setOutputPath(String outputPath) { this.outputPath = outputPath; }
+    public String getQueue() { return queue; }
+    public void setQueue(String queue) { this.queue = queue; }
+    // Higher runs first within its queue
+    public int getPriority() { return priority; }
+    public void setPriority(int priority) { this.priority = priority; }
+    // 0 = use job_timeout_seconds
+    public int getTimeoutSeconds() { return timeoutSeconds; }
+    public void setTimeoutSeconds(int timeoutSeconds) { this.timeoutSeconds = timeoutSeconds; }
+    // Stored row version (see JobRepository.jobVersion); 0 for a job that hasn't been saved
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    // Worker that holds, or last held, its claim as stored; null if it was never claimed
+    public String getWorkerId() { return workerId; }
+    public void setWorkerId(String workerId) { this.workerId = workerId; }
 
     @Override
     public boolean equals(Object o) {
@@ -1,67 +1,195 @@
 package com.queuectl.core;
 
-import com.queuectl.storage.JobRepository;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 public class JobExecutor {
 
-    private final JobRepository repository;
+    private final Path outputDir;
+    private final int headBytes;
+    private final int tailBytes;
+    private final boolean persistentShell;
+    private final int runnerMaxJobs;
+    private final int defaultTimeoutSeconds;
+    private final ProcessSupervisor supervisor = ProcessSupervisor.shared();
+    // Warm helpers not running a job right now; one per concurrently running shell job at most
+    private final Deque<ShellRunner> idleRunners = new ConcurrentLinkedDeque<>();
 
-    public JobExecutor(JobRepository repository) {
-        this.repository = repository;
+    public JobExecutor() {
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.outputDir = Path.of(cfg.get("output_dir", "job-logs"));
+        this.headBytes = cfg.getInt("output_head_bytes", 4096);
+        this.tailBytes = cfg.getInt("output_tail_bytes", 4096);
+        this.persistentShell = "persistent".equalsIgnoreCase(cfg.get("shell_mode", "fork"))
+                && !System.getProperty("os.name").toLowerCase().contains("win");
+        this.runnerMaxJobs = Math.max(1, cfg.getInt("shell_runner_max_jobs", 1000));
+        this.defaultTimeoutSeconds = Math.max(0, cfg.getInt("job_timeout_seconds", 0));
     }
 
-    public void execute(Job job) {
+    // Runs the job's command and reports the outcome; persisting it is the caller's job
+    public JobResult run(Job job) {
+        if (job.getCommand().startsWith(JobHandlers.PREFIX)) return runInProcess(job);
+        if (persistentShell) return runInShellRunner(job);
+
+        Process process = null;
+        ProcessSupervisor.Watch watch = null;
+        OutputCapture output = new OutputCapture(logFile(job), headBytes, tailBytes);
+
         try {
-            repository.updateJobState(job.getId(), JobState.PROCESSING);
-            Process process = null;
-            StringBuilder output = new StringBuilder();
+            String os = System.getProperty("os.name").toLowerCase();
+            ProcessBuilder builder;
 
-            try {
-                String os = System.getProperty("os.name").toLowerCase();
-                ProcessBuilder builder;
+            if (os.contains("win")) {
+                builder = new ProcessBuilder("cmd.exe", "/c", job.getCommand());
+            } else {
+                builder = new ProcessBuilder("bash", "-c", job.getCommand());
+            }
+
+            builder.redirectErrorStream(true);
+            String tag = supervisor.newTag();
+            builder.environment().put(ProcessSupervisor.TAG_ENV, tag);
+            process = builder.start();
+            // Armed until the output is drained, since a background child can hold the pipe after the shell exits;
+            // on timeout everything carrying the tag dies and the read below sees EOF
+            watch = supervisor.watch(process, tag, timeoutSeconds(job) * 1000L);
+            // Jobs get no input; a command that reads stdin sees EOF instead of blocking forever
+            process.getOutputStream().close();
 
-                if (os.contains("win")) {
-                    builder = new ProcessBuilder("cmd.exe", "/c", job.getCommand());
-                } else {
-                    builder = new ProcessBuilder("bash", "-c", job.getCommand());
+            // Raw bytes straight into the bounded capture; no line splitting or full-output decoding
+            try (InputStream in = process.getInputStream()) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    output.write(buf, 0, n);
                 }
+            }
 
-                builder.redirectErrorStream(true);
-                process = builder.start();
+            int exitCode = process.waitFor();
+            watch.close();
+            output.close();
+            return finish(job, exitCode, output, watch);
 
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        output.append(line).append(System.lineSeparator());
-                    }
-                }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Job " + job.getId() + " failed due to: " + e.getMessage());
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return new JobResult(-1, output.summary(), pathOf(output), String.valueOf(e.getMessage()));
+        } finally {
+            if (watch != null) watch.close();
+            try { output.close(); } catch (IOException ignored) {}
+            // Only reached alive on an error or interrupt; destroy() alone would orphan the job's children
+            if (process != null && process.isAlive()) supervisor.killTree(process.toHandle(), true);
+        }
+    }
 
-                int exitCode = process.waitFor();
-                repository.updateJobOutput(job.getId(), output.toString());
+    // java:<handler class> [args...] runs on this thread: no fork/exec, no pipes
+    private JobResult runInProcess(Job job) {
+        OutputCapture output = new OutputCapture(logFile(job), headBytes, tailBytes);
+        String[] words = job.getCommand().substring(JobHandlers.PREFIX.length()).trim().split("\\s+");
+        ProcessSupervisor.Watch watch = null;
+        try {
+            JobHandler handler = JobHandlers.get(words[0]);
+            if (handler == null) {
+                System.err.println("Job " + job.getId() + " failed: no job handler registered as " + words[0]);
+                return new JobResult(-1, "", null, "No job handler registered as " + words[0]);
+            }
+            int exitCode;
+            watch = supervisor.watchThread(Thread.currentThread(), timeoutSeconds(job) * 1000L);
+            try (PrintStream out = new PrintStream(output, false, StandardCharsets.UTF_8)) {
+                exitCode = handler.run(job, Arrays.copyOfRange(words, 1, words.length), out);
+            } finally {
+                watch.close();
+            }
+            return finish(job, exitCode, output, watch);
 
-                if (exitCode == 0) {
-                    repository.updateJobState(job.getId(), JobState.COMPLETED);
-                    System.out.println("Job " + job.getId() + " completed successfully");
-                } else {
-                    repository.updateJobState(job.getId(), JobState.FAILED);
-                    System.err.println("Job " + job.getId() + " failed with exit code " + exitCode);
-                }
+        } catch (Exception | LinkageError e) {
+            if (watch != null && watch.timedOut()) return finish(job, -1, output, watch);
+            // A handler failure fails the attempt, as a non-zero exit would; it never takes the worker down
+            System.err.println("Job " + job.getId() + " failed due to: " + e);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return new JobResult(-1, output.summary(), pathOf(output), e.toString());
+        } finally {
+            // The deadline's interrupt was meant for the handler, not for whatever this thread runs next
+            if (watch != null && watch.timedOut()) Thread.interrupted();
+            try { output.close(); } catch (IOException ignored) {}
+        }
+    }
 
-            } catch (IOException | InterruptedException e) {
-                repository.updateJobState(job.getId(), JobState.FAILED);
-                repository.updateJobOutput(job.getId(), e.getMessage());
-                System.err.println("Job " + job.getId() + " failed due to: " + e.getMessage());
-                Thread.currentThread().interrupt();
+    // shell_mode=persistent: the job runs in a warm bash helper instead of a process started per job
+    private JobResult runInShellRunner(Job job) {
+        OutputCapture output = new OutputCapture(logFile(job), headBytes, tailBytes);
+        ShellRunner runner = null;
+        try {
+            runner = borrowRunner();
+            // On timeout only the job's processes are killed; the helper prints its sentinel and lives on
+            ProcessSupervisor.Watch watch = supervisor.watchChildren(runner.handle(), timeoutSeconds(job) * 1000L);
+            int exitCode;
+            try {
+                exitCode = runner.run(job.getCommand(), output);
             } finally {
-                if (process != null) process.destroy();
+                watch.close();
             }
-        } catch (Exception e) {
-            System.err.println("Repository error for job " + job.getId() + ": " + e.getMessage());
-            e.printStackTrace();
+            output.close();
+            return finish(job, exitCode, output, watch);
+
+        } catch (IOException | NumberFormatException e) {
+            // The helper died under the job (or never started); the next job gets a fresh one
+            if (runner != null) runner.close();
+            runner = null;
+            System.err.println("Job " + job.getId() + " failed due to: " + e.getMessage());
+            return new JobResult(-1, output.summary(), pathOf(output), String.valueOf(e.getMessage()));
+        } finally {
+            try { output.close(); } catch (IOException ignored) {}
+            if (runner != null) returnRunner(runner);
         }
     }
+
+    private ShellRunner borrowRunner() throws IOException {
+        ShellRunner runner;
+        while ((runner = idleRunners.pollFirst()) != null) {
+            if (runner.isAlive()) return runner;
+            runner.close();
+        }
+        return ShellRunner.start();
+    }
+
+    private void returnRunner(ShellRunner runner) {
+        // Recycled after N jobs so whatever jobs leave behind in the helper can't pile up
+        if (runner.isAlive() && runner.jobsRun() < runnerMaxJobs) {
+            idleRunners.offerFirst(runner);
+        } else {
+            runner.close();
+        }
+    }
+
+    private int timeoutSeconds(Job job) {
+        return job.getTimeoutSeconds() > 0 ? job.getTimeoutSeconds() : defaultTimeoutSeconds;
+    }
+
+    private JobResult finish(Job job, int exitCode, OutputCapture output, ProcessSupervisor.Watch watch) {
+        if (watch.timedOut()) {
+            System.err.println("Job " + job.getId() + " timed out after " + timeoutSeconds(job) + "s");
+            return JobResult.timedOut(output.summary(), pathOf(output), timeoutSeconds(job));
+        }
+        if (exitCode == 0) {
+            System.out.println("Job " + job.getId() + " completed successfully");
+            return new JobResult(0, output.summary(), pathOf(output), null);
+        }
+        System.err.println("Job " + job.getId() + " failed with exit code " + exitCode);
+        return new JobResult(exitCode, output.summary(), pathOf(output), "Exit code " + exitCode);
+    }
+
+    private Path logFile(Job job) {
+        return outputDir.resolve(job.getId().replaceAll("[^A-Za-z0-9._-]", "_") + ".log");
+    }
+
+    private static String pathOf(OutputCapture output) {
+        Path p = output.spillFile();
+        return p == null ? null : p.toString();
+    }
 }
@@ -0,0 +1,23 @@
+package com.queuectl.core;
+
+import java.io.PrintStream;
+
+/**
+ * In-process job runner, discovered with {@link java.util.ServiceLoader}. A job whose command
+ * is {@code java:<handler class> [args...]} is run by calling the registered handler of that
+ * class on the worker thread, with the rest of the command split on whitespace as arguments,
+ * instead of forking a shell. Any other command still runs through the shell.
+ *
+ * <p>Register an implementation by listing its class name in
+ * {@code META-INF/services/com.queuectl.core.JobHandler} on the worker's classpath. One
+ * instance serves every worker thread, so implementations must be thread-safe.
+ */
+public interface JobHandler {
+
+    /**
+     * Runs one job. Whatever is written to {@code out} is captured like a shell job's output.
+     * Returns the exit code: 0 completes the job, anything else fails the attempt, as does
+     * throwing.
+     */
+    int run(Job job, String[] args, PrintStream out) throws Exception;
+}
@@ -0,0 +1,44 @@
+package com.queuectl.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the {@link JobHandler}s on the classpath, keyed by class name. Loaded once,
+ * on the first {@code java:} job, so shell-only workers never scan for providers.
+ */
+final class JobHandlers {
+
+    static final String PREFIX = "java:";
+
+    private static final class Holder {
+        static final Map<String, JobHandler> HANDLERS = load();
+    }
+
+    private JobHandlers() {}
+
+    static JobHandler get(String className) {
+        return Holder.HANDLERS.get(className);
+    }
+
+    private static Map<String, JobHandler> load() {
+        Map<String, JobHandler> out = new HashMap<>();
+        try {
+            ServiceLoader.load(JobHandler.class).stream().forEach(p -> {
+                try {
+                    out.put(p.type().getName(), p.get());
+                } catch (ServiceConfigurationError e) {
+                    // One handler that fails to construct shouldn't take the others down with it
+                    System.err.println("Skipping job handler " + p.type().getName() + ": " + e.getMessage());
+                }
+            });
+        } catch (ServiceConfigurationError e) {
+            // Malformed services file or a listed class that isn't there; keep what loaded so far
+            System.err.println("Job handler lookup stopped early: " + e.getMessage());
+        }
+        return Collections.unmodifiableMap(out);
+    }
+}
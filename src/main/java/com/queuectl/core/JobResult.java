@@ -0,0 +1,40 @@
+package com.queuectl.core;
+
+public class JobResult {
+    // Exit code reported for a job that was killed at its deadline, as coreutils timeout(1) does
+    public static final int TIMEOUT_EXIT_CODE = 124;
+
+    private final int exitCode;
+    private final String output;
+    private final String outputPath;
+    private final String error;
+    private final boolean timedOut;
+
+    public JobResult(int exitCode, String output, String error) {
+        this(exitCode, output, null, error);
+    }
+
+    public JobResult(int exitCode, String output, String outputPath, String error) {
+        this(exitCode, output, outputPath, error, false);
+    }
+
+    private JobResult(int exitCode, String output, String outputPath, String error, boolean timedOut) {
+        this.exitCode = exitCode;
+        this.output = output;
+        this.outputPath = outputPath;
+        this.error = error;
+        this.timedOut = timedOut;
+    }
+
+    public static JobResult timedOut(String output, String outputPath, long timeoutSeconds) {
+        return new JobResult(TIMEOUT_EXIT_CODE, output, outputPath, "Timed out after " + timeoutSeconds + "s", true);
+    }
+
+    public boolean isSuccess() { return exitCode == 0 && error == null; }
+    public int getExitCode() { return exitCode; }
+    // Whole output for small jobs; head and tail only when the full output was spilled to outputPath
+    public String getOutput() { return output; }
+    public String getOutputPath() { return outputPath; }
+    public String getError() { return error; }
+    public boolean isTimedOut() { return timedOut; }
+}
@@ -2,6 +2,7 @@ package com.queuectl.core;
 
 public enum JobState {
     PENDING,
+    RUNNING,
     PROCESSING,
     COMPLETED,
     FAILED,
@@ -0,0 +1,77 @@
+package com.queuectl.core;
+
+import java.time.Instant;
+
+/**
+ * One state change for one job, as applied by {@code JobRepository.applyTransitions}.
+ * Null fields, including the state, mean "leave the stored value unchanged".
+ */
+public class JobTransition {
+    private final String jobId;
+    private final JobState state;
+    private final Integer attempts;
+    private final Instant nextRunAt;
+    private final String output;
+    private final String outputPath;
+    private final String lastError;
+    private final String command;
+
+    private JobTransition(String jobId, JobState state, Integer attempts, Instant nextRunAt,
+                          String output, String outputPath, String lastError, String command) {
+        this.jobId = jobId;
+        this.state = state;
+        this.attempts = attempts;
+        this.nextRunAt = nextRunAt;
+        this.output = output;
+        this.outputPath = outputPath;
+        this.lastError = lastError;
+        this.command = command;
+    }
+
+    // Partial update of an existing row; any argument may be null
+    public static JobTransition update(String jobId, JobState state, Integer attempts, Instant nextRunAt,
+                                       String output, String lastError) {
+        return new JobTransition(jobId, state, attempts, nextRunAt, output, null, lastError, null);
+    }
+
+    public static JobTransition started(Job job) {
+        return new JobTransition(job.getId(), JobState.PROCESSING, null, null, null, null, null, job.getCommand());
+    }
+
+    public static JobTransition completed(Job job, JobResult result) {
+        return new JobTransition(job.getId(), JobState.COMPLETED, null, null,
+                result.getOutput(), result.getOutputPath(), null, job.getCommand());
+    }
+
+    public static JobTransition retry(Job job, int attempts, Instant nextRunAt, JobResult result) {
+        return new JobTransition(job.getId(), JobState.PENDING, attempts, nextRunAt,
+                result.getOutput(), result.getOutputPath(), result.getError(), job.getCommand());
+    }
+
+    // DEAD transitions move the job out of the jobs table and into the DLQ
+    public static JobTransition dead(Job job, int attempts, JobResult result) {
+        return new JobTransition(job.getId(), JobState.DEAD, attempts, null,
+                result.getOutput(), result.getOutputPath(), result.getError(), job.getCommand());
+    }
+
+    // Folds a later transition for the same job into this one; the later values win
+    public JobTransition mergedWith(JobTransition later) {
+        return new JobTransition(jobId,
+                later.state != null ? later.state : state,
+                later.attempts != null ? later.attempts : attempts,
+                later.nextRunAt != null ? later.nextRunAt : nextRunAt,
+                later.output != null ? later.output : output,
+                later.outputPath != null ? later.outputPath : outputPath,
+                later.lastError != null ? later.lastError : lastError,
+                later.command != null ? later.command : command);
+    }
+
+    public String getJobId() { return jobId; }
+    public JobState getState() { return state; }
+    public Integer getAttempts() { return attempts; }
+    public Instant getNextRunAt() { return nextRunAt; }
+    public String getOutput() { return output; }
+    public String getOutputPath() { return outputPath; }
+    public String getLastError() { return lastError; }
+    public String getCommand() { return command; }
+}
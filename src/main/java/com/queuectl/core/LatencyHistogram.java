@@ -0,0 +1,97 @@
+package com.queuectl.core;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: every power of two is split into
+ * eight buckets, so any recorded value is known to within 12.5%. Each bucket is a
+ * {@link LongAdder}, so recording from many threads neither allocates nor contends on one
+ * counter. Values are nanoseconds, capped at about nine hours.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXP = 45;
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB_COUNT;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) counts[i] = new LongAdder();
+    }
+
+    void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts[index(v)].increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    static int index(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    // Smallest value that falls in the bucket after i, i.e. the exclusive upper bound of bucket i
+    static long upperBound(int i) {
+        if (i < SUB_COUNT) return i + 1;
+        int exp = i / SUB_COUNT + SUB_BITS - 1;
+        long sub = i % SUB_COUNT;
+        return (SUB_COUNT + sub + 1) << (exp - SUB_BITS);
+    }
+
+    /** A copy taken once per report, so its percentiles and bucket counts come from the same numbers. */
+    Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts[i].sum();
+            total += c[i];
+        }
+        return new Snapshot(c, total, sum.sum(), max.get());
+    }
+
+    static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sumNanos;
+        final long maxNanos;
+
+        Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        long mean() {
+            return count == 0 ? 0 : sumNanos / count;
+        }
+
+        // Upper edge of the bucket holding the q-th value, so the true value is at most this
+        long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i) - 1, maxNanos);
+            }
+            return maxNanos;
+        }
+
+        // Values below limit; limit must be a power of two, which is always a bucket edge
+        long countBelow(long limit) {
+            long n = 0;
+            for (int i = 0; i < counts.length && upperBound(i) <= limit; i++) n += counts[i];
+            return n;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+
+import java.net.InetAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Heartbeat and reaper for job leases. Every interval it extends the lease on all jobs
+ * this process has claimed with a single repository call, then recovers jobs whose owner
+ * stopped heartbeating (killed, hung, or lost its disk), waking idle claimers if any
+ * came back.
+ */
+public class LeaseKeeper implements Runnable {
+
+    private final JobRepository repository;
+    private final String ownerId;
+    private final JobSignal signal;
+    private final long intervalMs;
+    private volatile boolean running = true;
+
+    public LeaseKeeper(JobRepository repository, String ownerId, JobSignal signal) {
+        this.repository = repository;
+        this.ownerId = ownerId;
+        this.signal = signal;
+        this.intervalMs = Math.max(100, ConfigManager.getInstance().getInt("heartbeat_interval_ms", 10000));
+    }
+
+    // Unique per process, even across pid reuse, so one process never renews a dead one's leases
+    public static String newOwnerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        return ProcessHandle.current().pid() + "@" + host + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000));
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                repository.renewLeases(ownerId);
+                int reaped = repository.reapExpiredLeases();
+                if (reaped > 0) {
+                    System.out.println("Recovered " + reaped + " job(s) from expired leases");
+                    signal.signalAll();
+                }
+            } catch (Exception e) {
+                System.err.println("Lease keeper error: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
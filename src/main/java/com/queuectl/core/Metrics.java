@@ -0,0 +1,171 @@
+package com.queuectl.core;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide instrumentation of the worker pipeline: latency histograms for the wait from
+ * enqueue to claim, the claim itself, execution and persisting results, plus transition
+ * counters and per-worker busy time. Recording only touches {@link LongAdder}s, so the hot
+ * path neither allocates nor serialises on a shared counter.
+ */
+public final class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    // Enqueue, or the retry's next_run_at, to the claim that picked the job up
+    private final LatencyHistogram claimWait = new LatencyHistogram();
+    private final LatencyHistogram claimTime = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+    private final LatencyHistogram persist = new LatencyHistogram();
+    private final LongAdder[] transitions = new LongAdder[JobState.values().length];
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder persistFailures = new LongAdder();
+    private final Map<String, LongAdder> workerBusy = new ConcurrentHashMap<>();
+    private final long startedAt = System.nanoTime();
+
+    private Metrics() {
+        for (int i = 0; i < transitions.length; i++) transitions[i] = new LongAdder();
+    }
+
+    // --- recording ---
+
+    public void recordEnqueued(int jobs) {
+        enqueued.add(jobs);
+    }
+
+    // Indexed loop: no iterator on the claim path
+    void recordClaim(List<Job> claimed, long nanos) {
+        claimTime.record(nanos);
+        claims.increment();
+        if (claimed.isEmpty()) return;
+        long nowMs = System.currentTimeMillis();
+        for (int i = 0; i < claimed.size(); i++) {
+            Job job = claimed.get(i);
+            long dueMs = job.getCreatedAt().toEpochMilli();
+            if (job.getNextRunAt() != null) dueMs = Math.max(dueMs, job.getNextRunAt().toEpochMilli());
+            claimWait.record((nowMs - dueMs) * 1_000_000L);
+        }
+        transitions[JobState.RUNNING.ordinal()].add(claimed.size());
+    }
+
+    // Looked up once per worker, so recording its busy time is a single add
+    LongAdder workerBusy(String workerId) {
+        return workerBusy.computeIfAbsent(workerId, k -> new LongAdder());
+    }
+
+    void recordExecution(LongAdder busy, long nanos) {
+        execution.record(nanos);
+        busy.add(nanos);
+    }
+
+    void recordPersist(List<JobTransition> batch, long nanos) {
+        persist.record(nanos);
+        for (int i = 0; i < batch.size(); i++) {
+            JobState s = batch.get(i).getState();
+            if (s != null) transitions[s.ordinal()].increment();
+        }
+    }
+
+    void recordPersistFailure() {
+        persistFailures.increment();
+    }
+
+    // --- reporting ---
+
+    private Map<String, LatencyHistogram> histograms() {
+        Map<String, LatencyHistogram> h = new LinkedHashMap<>();
+        h.put("claim_wait", claimWait);
+        h.put("claim", claimTime);
+        h.put("execution", execution);
+        h.put("persist", persist);
+        return h;
+    }
+
+    public void writeText(PrintStream out) {
+        double upSeconds = (System.nanoTime() - startedAt) / 1e9;
+        out.printf("Since start: %.0fs, %d enqueued here, %d claims, %d persist failures%n",
+                upSeconds, enqueued.sum(), claims.sum(), persistFailures.sum());
+        out.println("Latency (ms)         count      mean       p50       p90       p99    p99.9       max");
+        for (Map.Entry<String, LatencyHistogram> e : histograms().entrySet()) {
+            LatencyHistogram.Snapshot s = e.getValue().snapshot();
+            out.printf("  %-12s %10d %9.3f %9.3f %9.3f %9.3f %8.3f %9.3f%n", e.getKey(), s.count,
+                    ms(s.mean()), ms(s.percentile(0.50)), ms(s.percentile(0.90)), ms(s.percentile(0.99)),
+                    ms(s.percentile(0.999)), ms(s.maxNanos));
+        }
+        out.println("Transitions:");
+        for (JobState state : JobState.values()) {
+            out.printf("  %-10s : %d%n", state, transitions[state.ordinal()].sum());
+        }
+        if (!workerBusy.isEmpty()) {
+            // In virtual-thread mode one entry covers every job, so it can exceed 100% (average jobs running)
+            out.println("Worker busy time:");
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(workerBusy).entrySet()) {
+                out.printf("  %-10s : %.1f%%%n", e.getKey(), 100.0 * e.getValue().sum() / 1e9 / upSeconds);
+            }
+        }
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // Prometheus text format, version 0.0.4
+    public void writePrometheus(StringBuilder sb) {
+        counter(sb, "queuectl_enqueued_total", "Jobs enqueued through this process", enqueued.sum());
+        counter(sb, "queuectl_claims_total", "Claim transactions, including empty ones", claims.sum());
+        counter(sb, "queuectl_persist_failures_total", "Result batches that failed to persist", persistFailures.sum());
+
+        sb.append("# HELP queuectl_transitions_total Job state transitions made by this process\n");
+        sb.append("# TYPE queuectl_transitions_total counter\n");
+        for (JobState state : JobState.values()) {
+            sb.append("queuectl_transitions_total{state=\"").append(state).append("\"} ")
+              .append(transitions[state.ordinal()].sum()).append('\n');
+        }
+
+        histogram(sb, "queuectl_claim_wait_seconds", "Time from enqueue (or retry due time) to claim", claimWait);
+        histogram(sb, "queuectl_claim_duration_seconds", "Time spent in the claim transaction", claimTime);
+        histogram(sb, "queuectl_execution_duration_seconds", "Job execution time", execution);
+        histogram(sb, "queuectl_persist_duration_seconds", "Time to persist one batch of results", persist);
+
+        sb.append("# HELP queuectl_worker_busy_seconds_total Time each worker spent running jobs\n");
+        sb.append("# TYPE queuectl_worker_busy_seconds_total counter\n");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(workerBusy).entrySet()) {
+            sb.append("queuectl_worker_busy_seconds_total{worker=\"").append(e.getKey()).append("\"} ")
+              .append(e.getValue().sum() / 1e9).append('\n');
+        }
+        sb.append("# HELP queuectl_uptime_seconds Seconds since this process started recording\n");
+        sb.append("# TYPE queuectl_uptime_seconds gauge\n");
+        sb.append("queuectl_uptime_seconds ").append((System.nanoTime() - startedAt) / 1e9).append('\n');
+    }
+
+    public static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    // Buckets every factor of 4 from ~1us to ~18min; powers of two are exact bucket edges in the histogram
+    private static void histogram(StringBuilder sb, String name, String help, LatencyHistogram h) {
+        LatencyHistogram.Snapshot s = h.snapshot();
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        for (int exp = 10; exp <= 40; exp += 2) {
+            long limit = 1L << exp;
+            sb.append(name).append("_bucket{le=\"").append(limit / 1e9).append("\"} ").append(s.countBelow(limit)).append('\n');
+        }
+        sb.append(name).append("_bucket{le=\"+Inf\"} ").append(s.count).append('\n');
+        sb.append(name).append("_sum ").append(s.sumNanos / 1e9).append('\n');
+        sb.append(name).append("_count ").append(s.count).append('\n');
+    }
+}
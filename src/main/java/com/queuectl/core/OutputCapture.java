@@ -0,0 +1,148 @@
+package com.queuectl.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bounded capture of a job's raw output bytes.
+ * Keeps the first {@code headBytes} and a ring of the last {@code tailBytes} in memory.
+ * Once the output no longer fits in both, everything (including what was already
+ * buffered) is streamed to {@code spillFile}, so small jobs never touch the disk.
+ */
+class OutputCapture extends OutputStream {
+
+    private final Path spillFile;
+    private final byte[] head;
+    private final byte[] tail;
+    private int headLen;
+    private int tailStart;
+    private int tailLen;
+    private long total;
+    private FileChannel channel;
+
+    OutputCapture(Path spillFile, int headBytes, int tailBytes) {
+        this.spillFile = spillFile;
+        this.head = new byte[Math.max(0, headBytes)];
+        this.tail = new byte[Math.max(1, tailBytes)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws IOException {
+        total += len;
+
+        int toHead = Math.min(len, head.length - headLen);
+        if (toHead > 0) {
+            System.arraycopy(buf, off, head, headLen, toHead);
+            headLen += toHead;
+            off += toHead;
+            len -= toHead;
+        }
+        if (len == 0) return;
+
+        if (channel == null && tailLen + len > tail.length) spill();
+        if (channel != null) writeFully(ByteBuffer.wrap(buf, off, len));
+        appendToTail(buf, off, len);
+    }
+
+    // First overflow: copy what is buffered so far to the file, then keep streaming
+    private void spill() throws IOException {
+        Files.createDirectories(spillFile.toAbsolutePath().getParent());
+        channel = FileChannel.open(spillFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(ByteBuffer.wrap(head, 0, headLen));
+        writeFully(ByteBuffer.wrap(tailBytes()));
+    }
+
+    private void writeFully(ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) channel.write(bb);
+    }
+
+    private void appendToTail(byte[] buf, int off, int len) {
+        if (len >= tail.length) {
+            System.arraycopy(buf, off + len - tail.length, tail, 0, tail.length);
+            tailStart = 0;
+            tailLen = tail.length;
+            return;
+        }
+        int end = (tailStart + tailLen) % tail.length;
+        int first = Math.min(len, tail.length - end);
+        System.arraycopy(buf, off, tail, end, first);
+        System.arraycopy(buf, off + first, tail, 0, len - first);
+        int overflow = Math.max(0, tailLen + len - tail.length);
+        tailStart = (tailStart + overflow) % tail.length;
+        tailLen = Math.min(tail.length, tailLen + len);
+    }
+
+    private byte[] tailBytes() {
+        byte[] out = new byte[tailLen];
+        int first = Math.min(tailLen, tail.length - tailStart);
+        System.arraycopy(tail, tailStart, out, 0, first);
+        System.arraycopy(tail, 0, out, first, tailLen - first);
+        return out;
+    }
+
+    boolean spilled() {
+        return channel != null;
+    }
+
+    Path spillFile() {
+        return spilled() ? spillFile : null;
+    }
+
+    // Whole output if it fit in memory, otherwise head + marker + tail
+    String summary() {
+        byte[] tailBytes = tailBytes();
+        if (!spilled()) {
+            // One contiguous run: a character split between head and tail decodes whole
+            byte[] all = new byte[headLen + tailBytes.length];
+            System.arraycopy(head, 0, all, 0, headLen);
+            System.arraycopy(tailBytes, 0, all, headLen, tailBytes.length);
+            return new String(all, StandardCharsets.UTF_8);
+        }
+
+        // Cut on code point boundaries so the marker isn't flanked by replacement characters
+        int headEnd = headBoundary(head, headLen);
+        int tailFrom = tailBoundary(tailBytes);
+        long omitted = total - headEnd - (tailBytes.length - tailFrom);
+        return new String(head, 0, headEnd, StandardCharsets.UTF_8)
+                + System.lineSeparator() + "... [" + omitted + " bytes omitted, full output in " + spillFile + "] ..."
+                + System.lineSeparator() + new String(tailBytes, tailFrom, tailBytes.length - tailFrom, StandardCharsets.UTF_8);
+    }
+
+    // len, less any multi-byte UTF-8 sequence left incomplete at the end of b[0..len)
+    static int headBoundary(byte[] b, int len) {
+        for (int i = len - 1; i >= Math.max(0, len - 4); i--) {
+            int c = b[i] & 0xFF;
+            if (c < 0x80) return len;
+            if (c >= 0xC0) {
+                int need = c >= 0xF0 ? 4 : c >= 0xE0 ? 3 : 2;
+                return i + need <= len ? len : i;
+            }
+        }
+        // Not UTF-8; the decoder replaces it as usual
+        return len;
+    }
+
+    // Index of the first byte in b that isn't the continuation of a sequence cut off at the start
+    static int tailBoundary(byte[] b) {
+        int i = 0;
+        while (i < b.length && i < 3 && (b[i] & 0xC0) == 0x80) i++;
+        return i;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+}
@@ -0,0 +1,165 @@
+package com.queuectl.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces job timeouts for every executor in the process from one timer thread.
+ *
+ * <p>Each running job gets a {@link Watch}: a deadline on the shared timer that is
+ * cancelled when the job finishes, so no thread sits in {@code waitFor} per job just to
+ * time it. When a deadline fires, the job's whole process tree is sent SIGTERM, and
+ * whatever hasn't exited after the grace period is killed outright. An in-process job
+ * is interrupted instead.
+ *
+ * <p>A forked job is done only once its output is drained, and a background child can
+ * keep the pipe open after the shell itself has exited. Such a child has been re-parented
+ * and is no longer a descendant, so forked jobs also carry a {@link #TAG_ENV} tag that
+ * their whole tree inherits, and the deadline kills every process carrying it. Finding
+ * tagged processes needs {@code /proc}; elsewhere only the live tree is killed.
+ */
+final class ProcessSupervisor {
+
+    private static final ProcessSupervisor SHARED = new ProcessSupervisor();
+
+    // Set in a forked job's environment; its descendants keep it after they are re-parented
+    static final String TAG_ENV = "QUEUECTL_JOB_TAG";
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final long graceMs;
+    private final AtomicLong tags = new AtomicLong();
+
+    private ProcessSupervisor() {
+        this.graceMs = Math.max(0, ConfigManager.getInstance().getInt("job_kill_grace_ms", 2000));
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "queuectl-job-timeouts");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    static ProcessSupervisor shared() {
+        return SHARED;
+    }
+
+    /** A job's deadline. Closing it before it fires disarms it. */
+    static final class Watch implements AutoCloseable {
+        private final Runnable onTimeout;
+        private ScheduledFuture<?> deadline;
+        private boolean closed;
+        private volatile boolean timedOut;
+
+        private Watch(Runnable onTimeout) {
+            this.onTimeout = onTimeout;
+        }
+
+        // The kill runs under the lock too: close() waits for it, so once close() returns no signal or
+        // interrupt meant for this job can reach the next one on a reused runner or worker thread
+        private void fire() {
+            synchronized (this) {
+                if (closed) return;
+                timedOut = true;
+                onTimeout.run();
+            }
+        }
+
+        boolean timedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            if (deadline != null) deadline.cancel(false);
+        }
+    }
+
+    private static final Watch NONE = new Watch(() -> {});
+
+    // A tag no other job in any queuectl process shares
+    String newTag() {
+        return ProcessHandle.current().pid() + "-" + tags.incrementAndGet();
+    }
+
+    // Kills the process, its descendants and anything else started with tag on timeout.
+    // The caller closes the watch once it has drained the output, not when the process exits.
+    Watch watch(Process process, String tag, long timeoutMs) {
+        if (timeoutMs <= 0) return NONE;
+        ProcessHandle root = process.toHandle();
+        return arm(() -> {
+            killTree(root, true);
+            for (ProcessHandle p : tagged(tag)) killTree(p, true);
+        }, timeoutMs);
+    }
+
+    // Kills the descendants of a long-lived helper on timeout, leaving the helper itself running
+    Watch watchChildren(ProcessHandle helper, long timeoutMs) {
+        if (timeoutMs <= 0) return NONE;
+        return arm(() -> killTree(helper, false), timeoutMs);
+    }
+
+    // In-process jobs can't be killed; the handler is interrupted and expected to give up
+    Watch watchThread(Thread thread, long timeoutMs) {
+        if (timeoutMs <= 0) return NONE;
+        return arm(thread::interrupt, timeoutMs);
+    }
+
+    Watch arm(Runnable onTimeout, long timeoutMs) {
+        Watch w = new Watch(onTimeout);
+        w.deadline = timer.schedule(w::fire, timeoutMs, TimeUnit.MILLISECONDS);
+        return w;
+    }
+
+    private static List<ProcessHandle> tagged(String tag) {
+        List<ProcessHandle> out = new ArrayList<>();
+        if (!Files.isDirectory(Path.of("/proc"))) return out;
+        // environ is NUL-separated; the leading NUL stops a match on the tail of another variable
+        String entry = "\0" + TAG_ENV + "=" + tag + "\0";
+        ProcessHandle.allProcesses().forEach(p -> {
+            try {
+                byte[] env = Files.readAllBytes(Path.of("/proc", Long.toString(p.pid()), "environ"));
+                if (("\0" + new String(env, StandardCharsets.ISO_8859_1)).contains(entry)) out.add(p);
+            } catch (IOException | SecurityException ignored) {
+                // Gone already, or not ours to read
+            }
+        });
+        return out;
+    }
+
+    /**
+     * SIGTERM to the tree, then SIGKILL to anything still alive after the grace period.
+     * The tree is snapshotted first: once a parent dies its children are re-parented and
+     * can no longer be found through it.
+     */
+    void killTree(ProcessHandle root, boolean includeRoot) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        if (includeRoot) tree.add(root);
+        root.descendants().forEach(tree::add);
+        if (tree.isEmpty()) return;
+        tree.forEach(ProcessHandle::destroy);
+
+        CompletableFuture<?>[] exits = tree.stream().map(ProcessHandle::onExit).toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(exits)
+                .orTimeout(graceMs, TimeUnit.MILLISECONDS)
+                .whenComplete((done, timeout) -> {
+                    if (timeout == null) return;
+                    for (ProcessHandle p : tree) {
+                        // Anything spawned during the grace period goes too
+                        p.descendants().forEach(ProcessHandle::destroyForcibly);
+                        p.destroyForcibly();
+                    }
+                });
+    }
+}
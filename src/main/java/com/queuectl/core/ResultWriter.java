@@ -0,0 +1,72 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the completion queue and group-commits whatever has accumulated in one
+ * repository transaction, so executors never contend for the SQLite write lock.
+ */
+public class ResultWriter implements Runnable {
+
+    private final JobRepository repository;
+    private final BlockingQueue<JobTransition> completions;
+    private final JobSignal signal;
+    private final int maxBatch;
+    private final Metrics metrics = Metrics.getInstance();
+    private volatile boolean running = true;
+
+    public ResultWriter(JobRepository repository, BlockingQueue<JobTransition> completions,
+                        JobSignal signal, int maxBatch) {
+        this.repository = repository;
+        this.completions = completions;
+        this.signal = signal;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    @Override
+    public void run() {
+        List<JobTransition> batch = new ArrayList<>(maxBatch);
+
+        // Keep going after stop() until everything the executors reported is written
+        while (running || !completions.isEmpty()) {
+            try {
+                JobTransition first = completions.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                completions.drainTo(batch, maxBatch - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // stop() interrupts us out of poll(); the loop condition decides whether to finish draining
+                running = false;
+            }
+        }
+    }
+
+    private void flush(List<JobTransition> batch) {
+        try {
+            long start = System.nanoTime();
+            repository.applyTransitions(batch);
+            metrics.recordPersist(batch, System.nanoTime() - start);
+            for (JobTransition t : batch) {
+                if (t.getState() == JobState.PENDING) {
+                    // Let idle claimers recompute their wait for the new next_run_at
+                    signal.signalAll();
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            metrics.recordPersistFailure();
+            System.err.println("Result writer failed to persist " + batch.size() + " transition(s): " + e.getMessage());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
@@ -0,0 +1,277 @@
+package com.queuectl.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.queuectl.storage.JobRepository;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archives and deletes COMPLETED jobs and DLQ entries past their TTL or row cap, in small
+ * batches so each delete holds the write lock only briefly, then hands freed pages back
+ * and checkpoints the WAL. Rows are written to a gzip NDJSON archive before they are
+ * deleted, so a crash in between can only duplicate archive lines, never lose rows.
+ */
+public class Retention implements Runnable {
+
+    private static final DateTimeFormatter FILE_TS =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final JobRepository repository;
+    private final long completedTtlHours;
+    private final long completedMaxRows;
+    private final long dlqTtlHours;
+    private final long dlqMaxRows;
+    private final int batchSize;
+    private final int vacuumStepPages;
+    private final long batchPauseMs;
+    private final String archiveDir;
+    private final long intervalMs;
+    private final Gson gson = new Gson();
+    private volatile boolean running = true;
+
+    private Writer archive;
+    private Path archivePath;
+
+    public Retention(JobRepository repository) {
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.repository = repository;
+        this.completedTtlHours = cfg.getInt("retention_completed_ttl_hours", 168);
+        this.completedMaxRows = cfg.getInt("retention_completed_max_rows", 0);
+        this.dlqTtlHours = cfg.getInt("retention_dlq_ttl_hours", 720);
+        this.dlqMaxRows = cfg.getInt("retention_dlq_max_rows", 0);
+        this.batchSize = Math.max(1, cfg.getInt("retention_batch_size", 500));
+        this.vacuumStepPages = Math.max(1, cfg.getInt("retention_vacuum_step_pages", 256));
+        this.batchPauseMs = cfg.getInt("retention_batch_pause_ms", 10);
+        this.archiveDir = cfg.get("retention_archive_dir", "archive");
+        this.intervalMs = Duration.ofMinutes(cfg.getInt("retention_interval_minutes", 0)).toMillis();
+    }
+
+    public static class Report {
+        public int completedDeleted;
+        public int dlqDeleted;
+        public int pagesFreed;
+        public Path archive;
+    }
+
+    // One full pass; safe to run from several processes at once
+    public Report runOnce() throws Exception {
+        Report report = new Report();
+        Instant now = Instant.now();
+        try {
+            report.completedDeleted = purgeJobs(JobState.COMPLETED, cutoff(now, completedTtlHours), completedMaxRows);
+            report.dlqDeleted = purgeDLQ(cutoff(now, dlqTtlHours), dlqMaxRows);
+        } finally {
+            report.archive = closeArchive();
+        }
+
+        // Each step is its own short write transaction, so workers get the lock in between
+        int freed;
+        while (running && (freed = repository.incrementalVacuum(vacuumStepPages)) > 0) {
+            report.pagesFreed += freed;
+            pause();
+        }
+        repository.checkpoint();
+        return report;
+    }
+
+    // Gives writers blocked in SQLite's busy handler a window before the next batch grabs the lock
+    private void pause() throws InterruptedException {
+        if (batchPauseMs > 0) Thread.sleep(batchPauseMs);
+    }
+
+    private static Instant cutoff(Instant now, long ttlHours) {
+        return ttlHours > 0 ? now.minus(Duration.ofHours(ttlHours)) : null;
+    }
+
+    private int purgeJobs(JobState state, Instant createdBefore, long maxRows) throws Exception {
+        int deleted = 0;
+        if (createdBefore != null) {
+            List<Job> batch;
+            do {
+                batch = repository.findOldest(state, createdBefore, batchSize);
+                deleted += deleteJobs(state, batch);
+            } while (batch.size() == batchSize && running);
+        }
+        if (maxRows > 0) {
+            long excess = repository.countByState().getOrDefault(state, 0L) - maxRows;
+            while (excess > 0 && running) {
+                List<Job> batch = repository.findOldest(state, null, (int) Math.min(batchSize, excess));
+                if (batch.isEmpty()) break;
+                deleted += deleteJobs(state, batch);
+                excess -= batch.size();
+            }
+        }
+        return deleted;
+    }
+
+    private int deleteJobs(JobState state, List<Job> batch) throws Exception {
+        if (batch.isEmpty()) return 0;
+        List<String> ids = new ArrayList<>(batch.size());
+        for (Job job : batch) {
+            archiveJob(job);
+            ids.add(job.getId());
+        }
+        flushArchive();
+        int n = repository.deleteJobs(state, ids);
+        pause();
+        for (Job job : batch) {
+            // Spilled output is part of the row's history; it goes with the row
+            if (job.getOutputPath() != null) {
+                try { Files.deleteIfExists(Path.of(job.getOutputPath())); } catch (IOException ignored) {}
+            }
+        }
+        return n;
+    }
+
+    private int purgeDLQ(Instant failedBefore, long maxRows) throws Exception {
+        int deleted = 0;
+        if (failedBefore != null) {
+            List<Job> batch;
+            do {
+                batch = repository.findOldestInDLQ(failedBefore, batchSize);
+                deleted += deleteDLQ(batch);
+            } while (batch.size() == batchSize && running);
+        }
+        if (maxRows > 0) {
+            long excess = repository.countDLQ() - maxRows;
+            while (excess > 0 && running) {
+                List<Job> batch = repository.findOldestInDLQ(null, (int) Math.min(batchSize, excess));
+                if (batch.isEmpty()) break;
+                deleted += deleteDLQ(batch);
+                excess -= batch.size();
+            }
+        }
+        return deleted;
+    }
+
+    private int deleteDLQ(List<Job> batch) throws Exception {
+        if (batch.isEmpty()) return 0;
+        List<String> ids = new ArrayList<>(batch.size());
+        for (Job job : batch) {
+            archiveDead(job);
+            ids.add(job.getId());
+        }
+        flushArchive();
+        int n = repository.deleteFromDLQ(ids);
+        pause();
+        return n;
+    }
+
+    // --- archive: one gzip NDJSON file per run, opened on the first row ---
+
+    // Every column of the jobs row, under the column's own name
+    private void archiveJob(Job job) throws IOException {
+        JsonObject o = new JsonObject();
+        o.addProperty("table", "jobs");
+        o.addProperty("id", job.getId());
+        o.addProperty("command", job.getCommand());
+        o.addProperty("state", job.getState().name());
+        o.addProperty("attempts", job.getAttempts());
+        o.addProperty("max_retries", job.getMaxRetries());
+        o.addProperty("created_at", ts(job.getCreatedAt()));
+        o.addProperty("updated_at", ts(job.getUpdatedAt()));
+        o.addProperty("next_run_at", ts(job.getNextRunAt()));
+        o.addProperty("last_error", job.getLastError());
+        o.addProperty("output", job.getOutput());
+        o.addProperty("output_path", job.getOutputPath());
+        o.addProperty("queue", job.getQueue());
+        o.addProperty("priority", job.getPriority());
+        o.addProperty("timeout_seconds", job.getTimeoutSeconds());
+        o.addProperty("worker_id", job.getWorkerId());
+        o.addProperty("version", job.getVersion());
+        write(o);
+    }
+
+    // The dlq row's columns: findOldestInDLQ hands reason and failed_at over as lastError and updatedAt
+    private void archiveDead(Job job) throws IOException {
+        JsonObject o = new JsonObject();
+        o.addProperty("table", "dlq");
+        o.addProperty("id", job.getId());
+        o.addProperty("command", job.getCommand());
+        o.addProperty("reason", job.getLastError());
+        o.addProperty("failed_at", ts(job.getUpdatedAt()));
+        o.addProperty("queue", job.getQueue());
+        o.addProperty("priority", job.getPriority());
+        o.addProperty("timeout_seconds", job.getTimeoutSeconds());
+        o.addProperty("max_retries", job.getMaxRetries());
+        write(o);
+    }
+
+    private static String ts(Instant t) {
+        return t == null ? null : t.toString();
+    }
+
+    private void write(JsonObject row) throws IOException {
+        if (archiveDir.isEmpty()) return;
+        if (archive == null) {
+            Path dir = Path.of(archiveDir);
+            Files.createDirectories(dir);
+            archivePath = dir.resolve("queuectl-" + FILE_TS.format(Instant.now()) + ".ndjson.gz");
+            // syncFlush so every batch is decodable on disk before its rows are deleted
+            archive = new OutputStreamWriter(new GZIPOutputStream(
+                    Files.newOutputStream(archivePath, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 65536, true),
+                    StandardCharsets.UTF_8);
+        }
+        archive.write(gson.toJson(row));
+        archive.write('\n');
+    }
+
+    private void flushArchive() throws IOException {
+        if (archive != null) archive.flush();
+    }
+
+    private Path closeArchive() throws IOException {
+        if (archive == null) return null;
+        try {
+            archive.close();
+            return archivePath;
+        } finally {
+            archive = null;
+        }
+    }
+
+    // --- background mode, started by the worker process when retention_interval_minutes > 0 ---
+
+    public boolean isScheduled() {
+        return intervalMs > 0;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Report r = runOnce();
+                if (r.completedDeleted + r.dlqDeleted > 0) {
+                    System.out.printf("Retention: removed %d completed job(s), %d DLQ entries, freed %d page(s)%n",
+                            r.completedDeleted, r.dlqDeleted, r.pagesFreed);
+                }
+            } catch (Exception e) {
+                System.err.println("Retention error: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
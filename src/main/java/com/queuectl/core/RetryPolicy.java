@@ -0,0 +1,45 @@
+package com.queuectl.core;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class RetryPolicy {
+
+    private final int baseBackoff;
+    private final int maxBackoffSeconds;
+    private final double jitter;
+    private final boolean retryTimeouts;
+
+    public RetryPolicy(int baseBackoff) {
+        this.baseBackoff = baseBackoff;
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.maxBackoffSeconds = Math.max(1, cfg.getInt("backoff_max_seconds", 300));
+        this.jitter = Math.min(1.0, Math.max(0, cfg.getInt("backoff_jitter_percent", 20) / 100.0));
+        this.retryTimeouts = Boolean.parseBoolean(cfg.get("retry_timeouts", "true"));
+    }
+
+    // Failed jobs are either parked until next_run_at or, past max_retries, sent to the DLQ
+    public JobTransition onFailure(Job job, JobResult result) {
+        int attempts = job.getAttempts() + 1;
+        job.setAttempts(attempts);
+
+        // With retry_timeouts off, a job that hangs once is assumed to hang every time
+        if (attempts > job.getMaxRetries() || (result.isTimedOut() && !retryTimeouts)) {
+            System.err.println("Job " + job.getId() + " moved to Dead Letter Queue");
+            return JobTransition.dead(job, attempts, result);
+        }
+
+        long delayMs = retryDelayMs(attempts);
+        Instant nextRunAt = Instant.now().plusMillis(delayMs);
+        job.setNextRunAt(nextRunAt);
+        System.out.printf("Retrying job %s after %.1fs%n", job.getId(), delayMs / 1000.0);
+        return JobTransition.retry(job, attempts, nextRunAt, result);
+    }
+
+    // base^attempts seconds, capped at maxBackoffSeconds, with +/- jitter so failed bursts don't retry in lockstep
+    long retryDelayMs(int attempts) {
+        double delaySeconds = Math.min(Math.pow(baseBackoff, attempts), maxBackoffSeconds);
+        double factor = 1.0 + (jitter > 0 ? ThreadLocalRandom.current().nextDouble(-jitter, jitter) : 0.0);
+        return Math.max(0, Math.round(delaySeconds * factor * 1000));
+    }
+}
@@ -0,0 +1,102 @@
+package com.queuectl.core;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Long-lived bash helper that runs shell jobs one at a time, so a job costs a fork of an
+ * already-running shell instead of a new process from the JVM.
+ *
+ * <p>Each command is written to the helper's stdin terminated by a NUL byte (a command
+ * can't contain one) and run in a subshell, so {@code cd}, {@code exit} and variables
+ * don't leak into the next job. When it finishes the helper prints a NUL, a random
+ * per-helper token and the exit code; everything before that sentinel is the job's
+ * output.
+ */
+class ShellRunner implements Closeable {
+
+    private final Process process;
+    private final OutputStream commands;
+    private final InputStream results;
+    private final byte[] marker;
+    private final byte[] buf = new byte[8192];
+    private int jobsRun;
+
+    private ShellRunner(Process process, String token) {
+        this.process = process;
+        this.commands = process.getOutputStream();
+        this.results = process.getInputStream();
+        this.marker = ("\0" + token + " ").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static ShellRunner start() throws IOException {
+        String token = "QUEUECTL-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        // Job stdin is /dev/null: the helper's own stdin carries the commands. The helper's own stderr
+        // is dropped, or its "Killed" notice for a job that killed its subshell would land in that job's output
+        String loop = "while IFS= read -r -d '' cmd; do ( eval \"$cmd\" ) </dev/null 2>&1; "
+                + "printf '\\0" + token + " %d\\n' \"$?\"; done 2>/dev/null";
+        ProcessBuilder builder = new ProcessBuilder("bash", "-c", loop);
+        builder.redirectErrorStream(true);
+        return new ShellRunner(builder.start(), token);
+    }
+
+    ProcessHandle handle() {
+        return process.toHandle();
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    int jobsRun() {
+        return jobsRun;
+    }
+
+    /**
+     * Runs one command, streaming its output to {@code out}, and returns its exit code.
+     * Throws {@link EOFException} if the helper died mid-job; it must not be reused then.
+     */
+    int run(String command, OutputStream out) throws IOException {
+        jobsRun++;
+        commands.write(command.getBytes(StandardCharsets.UTF_8));
+        commands.write(0);
+        commands.flush();
+
+        int matched = 0;          // sentinel bytes seen so far, held back from the output
+        StringBuilder status = null;
+        while (true) {
+            int n = results.read(buf);
+            if (n == -1) throw new EOFException("Shell runner exited unexpectedly");
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                byte b = buf[i];
+                if (status != null) {
+                    if (b == '\n') return Integer.parseInt(status.toString());
+                    status.append((char) b);
+                } else if (b == marker[matched]) {
+                    if (matched == 0) out.write(buf, start, i - start);
+                    start = i + 1;
+                    if (++matched == marker.length) status = new StringBuilder();
+                } else if (matched > 0) {
+                    // False start: the held-back bytes were output after all
+                    out.write(marker, 0, matched);
+                    matched = b == marker[0] ? 1 : 0;
+                    start = matched == 1 ? i + 1 : i;
+                }
+            }
+            if (status == null && matched == 0) out.write(buf, start, n - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        // EOF on stdin ends the loop; destroy covers a helper stuck in a job
+        try { commands.close(); } catch (IOException ignored) {}
+        process.destroy();
+    }
+}
@@ -0,0 +1,94 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Claim loop for the virtual-thread worker mode.
+ * Every claimed job runs on its own virtual thread; concurrency is bounded by a
+ * semaphore of execution permits rather than by the number of threads.
+ */
+public class VirtualDispatcher implements Runnable {
+
+    private final String dispatcherId;
+    private final JobRepository repository;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int batchSize;
+    private final JobSignal signal;
+    private final IdleWaiter idleWaiter;
+    private final Worker processor;
+    private final Metrics metrics = Metrics.getInstance();
+    private volatile boolean running = true;
+
+    public VirtualDispatcher(String dispatcherId, JobRepository repository, ExecutorService executor,
+                             int maxConcurrency, int batchSize, JobSignal signal,
+                             BlockingQueue<JobTransition> completions, RetryPolicy retryPolicy) {
+        this.dispatcherId = dispatcherId;
+        this.repository = repository;
+        this.executor = executor;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.batchSize = Math.max(1, batchSize);
+        this.signal = signal;
+        this.idleWaiter = new IdleWaiter(repository, signal);
+        this.processor = new Worker(dispatcherId, null, completions, retryPolicy);
+    }
+
+    @Override
+    public void run() {
+        System.out.println("Dispatcher " + dispatcherId + " started.");
+
+        while (running) {
+            int slots = 0;
+            try {
+                // Wait for at least one free slot, then claim as many jobs as there are free slots
+                permits.acquire();
+                slots = 1 + permits.drainPermits();
+                int wanted = Math.min(slots, batchSize);
+                permits.release(slots - wanted);
+                slots = wanted;
+
+                long seen = signal.generation();
+                long claimStart = System.nanoTime();
+                List<Job> jobs = repository.claimBatch(dispatcherId, slots);
+                metrics.recordClaim(jobs, System.nanoTime() - claimStart);
+                permits.release(slots - jobs.size());
+                slots = 0;
+
+                if (jobs.isEmpty()) {
+                    idleWaiter.await(seen);
+                    continue;
+                }
+                idleWaiter.reset();
+
+                for (Job job : jobs) {
+                    executor.submit(() -> {
+                        try {
+                            processor.process(job);
+                        } catch (Exception e) {
+                            System.err.println("Dispatcher " + dispatcherId + " error on job " + job.getId() + ": " + e.getMessage());
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                if (slots > 0) permits.release(slots);
+                System.err.println("Dispatcher " + dispatcherId + " error: " + e.getMessage());
+            }
+        }
+
+        System.out.println("Dispatcher " + dispatcherId + " stopped gracefully.");
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
@@ -1,21 +1,31 @@
 package com.queuectl.core;
 
-import com.queuectl.storage.JobRepository;
-import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Executor thread: takes claimed jobs from the dispatcher's hand-off queue, runs them,
+ * and reports state transitions to the completion queue. Never touches the repository.
+ */
 public class Worker implements Runnable {
 
     private final String workerId;
-    private final JobRepository repository;
+    private final BlockingQueue<Job> handoff;
+    private final BlockingQueue<JobTransition> completions;
     private final JobExecutor executor;
-    private final int baseBackoff;
+    private final RetryPolicy retryPolicy;
+    private final Metrics metrics = Metrics.getInstance();
+    private final LongAdder busy;
     private volatile boolean running = true;
 
-    public Worker(String workerId, JobRepository repository, int baseBackoff) {
+    public Worker(String workerId, BlockingQueue<Job> handoff, BlockingQueue<JobTransition> completions,
+                  RetryPolicy retryPolicy) {
         this.workerId = workerId;
-        this.repository = repository;
-        this.executor = new JobExecutor(repository);
-        this.baseBackoff = baseBackoff;
+        this.handoff = handoff;
+        this.completions = completions;
+        this.executor = new JobExecutor();
+        this.retryPolicy = retryPolicy;
+        this.busy = metrics.workerBusy(workerId);
     }
 
     @Override
@@ -24,23 +34,7 @@ public class Worker implements Runnable {
 
         while (running) {
             try {
-                Optional<Job> optionalJob = repository.fetchNextPendingJob();
-
-                if (optionalJob.isEmpty()) {
-                    Thread.sleep(1000);
-                    continue;
-                }
-
-                Job job = optionalJob.get();
-                System.out.println("Worker " + workerId + " processing job: " + job.getId());
-                repository.updateJobState(job.getId(), JobState.PROCESSING);
-
-                executor.execute(job);
-
-                if (repository.getJobState(job.getId()) == JobState.FAILED) {
-                    handleRetry(job);
-                }
-
+                process(handoff.take());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -52,20 +46,19 @@ public class Worker implements Runnable {
         System.out.println("Worker " + workerId + " stopped gracefully.");
     }
 
-    private void handleRetry(Job job) throws Exception {  // Add Exception here
-        int attempts = job.getAttempts() + 1;
-        job.setAttempts(attempts);
-        repository.updateJobAttempts(job.getId(), attempts);
+    // Runs one claimed job to completion, including the retry/DLQ decision; safe to call from many threads
+    void process(Job job) {
+        System.out.println("Worker " + workerId + " processing job: " + job.getId());
+        completions.add(JobTransition.started(job));
+
+        long start = System.nanoTime();
+        JobResult result = executor.run(job);
+        metrics.recordExecution(busy, System.nanoTime() - start);
 
-        if (attempts > job.getMaxRetries()) {
-            repository.updateJobState(job.getId(), JobState.DEAD);
-            repository.moveToDLQ(job);
-            System.err.println("Job " + job.getId() + " moved to Dead Letter Queue");
+        if (result.isSuccess()) {
+            completions.add(JobTransition.completed(job, result));
         } else {
-            int delay = (int) Math.pow(baseBackoff, attempts);
-            System.out.println("Retrying job " + job.getId() + " after " + delay + "s");
-            repository.updateJobState(job.getId(), JobState.PENDING);
-            Thread.sleep(delay * 1000L);
+            completions.add(retryPolicy.onFailure(job, result));
         }
     }
 
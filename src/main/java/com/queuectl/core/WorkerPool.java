@@ -3,39 +3,130 @@ package com.queuectl.core;
 import com.queuectl.storage.JobRepository;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 
 public class WorkerPool {
 
     private final JobRepository repository;
     private final int workerCount;
-    private final int baseBackoff;
+    private final int batchSize;
+    private final boolean virtualThreads;
+    private final RetryPolicy retryPolicy;
     private final ExecutorService executorService;
     private final List<Worker> workers = new ArrayList<>();
+    private final JobSignal signal = new JobSignal();
+    private final BlockingQueue<Job> handoff;
+    private final BlockingQueue<JobTransition> completions = new LinkedBlockingQueue<>();
+    // Every claim this pool makes is leased under this id, so one heartbeat covers them all
+    private final String claimerId = LeaseKeeper.newOwnerId() + "/dispatcher-1";
+    private Dispatcher dispatcher;
+    private VirtualDispatcher virtualDispatcher;
+    private Thread dispatcherThread;
+    private ResultWriter writer;
+    private Thread writerThread;
+    private ChangeWatcher watcher;
+    private Thread watcherThread;
+    private LeaseKeeper leaseKeeper;
+    private Thread leaseThread;
 
     public WorkerPool(JobRepository repository, int workerCount, int baseBackoff) {
         this.repository = repository;
         this.workerCount = workerCount;
-        this.baseBackoff = baseBackoff;
-        this.executorService = Executors.newFixedThreadPool(workerCount);
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.batchSize = cfg.getInt("claim_batch_size", 1);
+        this.virtualThreads = "virtual".equalsIgnoreCase(cfg.get("worker_mode", "platform"));
+        this.retryPolicy = new RetryPolicy(baseBackoff);
+        this.handoff = new ArrayBlockingQueue<>(Math.max(1, cfg.getInt("handoff_queue_size", workerCount * 2)));
+        // In virtual mode workerCount is a concurrency limit, not a thread count
+        this.executorService = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(workerCount);
     }
 
 
     public void start() {
-        System.out.println("Starting " + workerCount + " worker(s)...");
-        for (int i = 1; i <= workerCount; i++) {
-            Worker worker = new Worker("worker-" + i, repository, baseBackoff);
-            workers.add(worker);
-            executorService.submit(worker);
+        ConfigManager cfg = ConfigManager.getInstance();
+
+        writer = new ResultWriter(repository, completions, signal, cfg.getInt("writer_batch_size", 256));
+        writerThread = new Thread(writer, "queuectl-result-writer");
+        writerThread.start();
+
+        if (virtualThreads) {
+            System.out.println("Starting virtual-thread dispatcher with concurrency " + workerCount + "...");
+            int claimBatch = cfg.getInt("virtual_claim_batch_size", 64);
+            virtualDispatcher = new VirtualDispatcher(claimerId, repository, executorService,
+                    workerCount, claimBatch, signal, completions, retryPolicy);
+            dispatcherThread = new Thread(virtualDispatcher, "queuectl-dispatcher");
+        } else {
+            System.out.println("Starting " + workerCount + " worker(s)...");
+            for (int i = 1; i <= workerCount; i++) {
+                Worker worker = new Worker("worker-" + i, handoff, completions, retryPolicy);
+                workers.add(worker);
+                executorService.submit(worker);
+            }
+            dispatcher = new Dispatcher(claimerId, repository, handoff, batchSize, signal);
+            dispatcherThread = new Thread(dispatcher, "queuectl-dispatcher");
         }
+        dispatcherThread.start();
+
+        watcher = new ChangeWatcher(repository, signal,
+                cfg.getInt("watch_min_interval_ms", 5), cfg.getInt("watch_max_interval_ms", 100));
+        watcherThread = new Thread(watcher, "queuectl-change-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+
+        leaseKeeper = new LeaseKeeper(repository, claimerId, signal);
+        leaseThread = new Thread(leaseKeeper, "queuectl-lease-keeper");
+        leaseThread.setDaemon(true);
+        leaseThread.start();
+    }
+
+    // Wake idle workers after an in-process enqueue
+    public void signal() {
+        signal.signalAll();
     }
 
     public void stop() {
         System.out.println("Stopping all workers...");
-        workers.forEach(Worker::stop);
-        executorService.shutdownNow();
+        try {
+            // 1. stop claiming; the dispatcher hands back anything still sitting in the hand-off queue
+            if (dispatcher != null) dispatcher.stop();
+            if (virtualDispatcher != null) virtualDispatcher.stop();
+            if (dispatcherThread != null) {
+                dispatcherThread.interrupt();
+                dispatcherThread.join(5000);
+            }
+            if (watcher != null) {
+                watcher.stop();
+                watcherThread.interrupt();
+            }
+
+            // 2. stop executors
+            workers.forEach(Worker::stop);
+            executorService.shutdownNow();
+            executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+            // 3. let the writer flush every reported result before the repository closes
+            if (writer != null) {
+                writer.stop();
+                writerThread.join(5000);
+            }
+
+            // 4. heartbeats last: jobs keep their leases for as long as shutdown takes
+            if (leaseKeeper != null) {
+                leaseKeeper.stop();
+                leaseThread.interrupt();
+                leaseThread.join(5000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         System.out.println("All workers stopped.");
     }
 
@@ -0,0 +1,455 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded cache in front of {@link #findById} and {@link #getJobState}. Jobs this process saves,
+ * claims or changes are written through, so reading them back doesn't need a round trip for
+ * the whole row.
+ *
+ * <p>Entries are evicted least recently used past {@code maxEntries} and dropped
+ * {@code ttlMs} after they were last loaded or written. An entry is served as is while the
+ * delegate's {@link JobRepository#dataVersion()} hasn't moved since it was last checked;
+ * otherwise its row version is compared with the stored one, and a mismatch (a change made
+ * by another process, or by anything this cache didn't see) reloads the row.
+ *
+ * <p>Sits under the group-commit wrapper, so every write it sees is one row update with a
+ * predictable version.
+ */
+public class CachingJobRepository implements JobRepository {
+
+    // The stamp of an entry whose dataVersion isn't known yet; always checked against the row version
+    private static final long UNCHECKED = Long.MIN_VALUE;
+
+    /** An immutable cached row. Writes replace the entry, so identity tells whether it changed. */
+    private static final class Entry {
+        final Job job;
+        final long version;
+        final long expiresAt;
+        long stamp;          // delegate.dataVersion() when the version was last confirmed; guarded by the cache lock
+
+        Entry(Job job, long version, long expiresAt, long stamp) {
+            this.job = job;
+            this.version = version;
+            this.expiresAt = expiresAt;
+            this.stamp = stamp;
+        }
+    }
+
+    private final JobRepository delegate;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long stale;
+    private long evictions;
+    private long expirations;
+
+    public CachingJobRepository(JobRepository delegate, int maxEntries, long ttlMs) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMs));
+        int max = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= max) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public void init() throws Exception {
+        delegate.init();
+    }
+
+    // --- cached reads ---
+
+    @Override
+    public Optional<Job> findById(String id) throws Exception {
+        Entry e = cached(id);
+        if (e != null) return Optional.of(copy(e.job));
+        return load(id).map(CachingJobRepository::copy);
+    }
+
+    @Override
+    public JobState getJobState(String jobId) throws Exception {
+        Entry e = cached(jobId);
+        if (e != null) return e.job.getState();
+        Optional<Job> job = load(jobId);
+        // Let the delegate report a missing job its usual way
+        return job.isPresent() ? job.get().getState() : delegate.getJobState(jobId);
+    }
+
+    // Returns a still-valid entry (counted as a hit), or null after counting the miss
+    private Entry cached(String id) throws Exception {
+        Entry e;
+        synchronized (entries) {
+            e = entries.get(id);
+            if (e != null && System.nanoTime() - e.expiresAt > 0) {
+                entries.remove(id);
+                expirations++;
+                e = null;
+            }
+            if (e == null) {
+                misses++;
+                return null;
+            }
+        }
+        long dv = delegate.dataVersion();
+        boolean valid;
+        synchronized (entries) {
+            valid = e.stamp == dv;
+        }
+        if (!valid) valid = delegate.jobVersion(id) == e.version;
+        synchronized (entries) {
+            if (valid) {
+                if (entries.get(id) == e) e.stamp = dv;
+                hits++;
+                return e;
+            }
+            if (entries.get(id) == e) entries.remove(id);
+            stale++;
+            misses++;
+        }
+        return null;
+    }
+
+    private Optional<Job> load(String id) throws Exception {
+        // Read before the row, so a commit landing after the read can't hide behind this stamp
+        long dv = delegate.dataVersion();
+        Optional<Job> job = delegate.findById(id);
+        if (job.isPresent()) {
+            Job j = copy(job.get());
+            synchronized (entries) {
+                entries.put(id, new Entry(j, j.getVersion(), System.nanoTime() + ttlNanos, dv));
+            }
+        }
+        return job;
+    }
+
+    // --- write-through ---
+
+    @Override
+    public void save(Job job) throws Exception {
+        delegate.save(job);
+        // A new row starts at version 0
+        put(job, 0);
+    }
+
+    @Override
+    public void saveAll(List<Job> jobs) throws Exception {
+        delegate.saveAll(jobs);
+        for (Job job : jobs) put(job, 0);
+    }
+
+    @Override
+    public Optional<Job> fetchNextPendingJob() throws Exception {
+        Optional<Job> job = delegate.fetchNextPendingJob();
+        job.ifPresent(j -> put(j, j.getVersion()));
+        return job;
+    }
+
+    @Override
+    public List<Job> claimBatch(String workerId, int n) throws Exception {
+        List<Job> claimed = delegate.claimBatch(workerId, n);
+        // Claimed rows come back with the version the claim gave them
+        for (Job j : claimed) put(j, j.getVersion());
+        return claimed;
+    }
+
+    @Override
+    public void updateJobState(String jobId, JobState state) throws Exception {
+        Entry before = peek(jobId);
+        delegate.updateJobState(jobId, state);
+        advance(jobId, before, j -> j.setState(state));
+    }
+
+    @Override
+    public void updateJobOutput(String jobId, String output) throws Exception {
+        // Output isn't cached (findById doesn't return it), but the row version still moves
+        Entry before = peek(jobId);
+        delegate.updateJobOutput(jobId, output);
+        advance(jobId, before, j -> j.setUpdatedAt(Instant.now()));
+    }
+
+    @Override
+    public void updateJobAttempts(String jobId, int attempts) throws Exception {
+        Entry before = peek(jobId);
+        delegate.updateJobAttempts(jobId, attempts);
+        advance(jobId, before, j -> j.setAttempts(attempts));
+    }
+
+    @Override
+    public void scheduleRetry(String jobId, int attempts, Instant nextRunAt) throws Exception {
+        Entry before = peek(jobId);
+        delegate.scheduleRetry(jobId, attempts, nextRunAt);
+        advance(jobId, before, j -> {
+            j.setState(JobState.PENDING);
+            j.setAttempts(attempts);
+            j.setNextRunAt(nextRunAt);
+        });
+    }
+
+    @Override
+    public void applyTransitions(List<JobTransition> transitions) throws Exception {
+        Map<String, Entry> before = new HashMap<>();
+        synchronized (entries) {
+            for (JobTransition t : transitions) before.put(t.getJobId(), entries.get(t.getJobId()));
+        }
+        delegate.applyTransitions(transitions);
+        for (JobTransition t : transitions) {
+            if (t.getState() == JobState.DEAD) {
+                remove(t.getJobId());
+                continue;
+            }
+            // Same null-means-unchanged rules as the UPDATE the delegate ran
+            advance(t.getJobId(), before.get(t.getJobId()), j -> {
+                if (t.getState() != null) j.setState(t.getState());
+                if (t.getAttempts() != null) j.setAttempts(t.getAttempts());
+                if (t.getNextRunAt() != null) j.setNextRunAt(t.getNextRunAt());
+                if (t.getOutput() != null) j.setOutputPath(t.getOutputPath());
+                if (t.getLastError() != null) j.setLastError(t.getLastError());
+                j.setUpdatedAt(Instant.now());
+            });
+        }
+    }
+
+    // Only RUNNING jobs are put back, so the outcome per job isn't known here
+    @Override
+    public void releaseJobs(Collection<String> jobIds) throws Exception {
+        delegate.releaseJobs(jobIds);
+        for (String id : jobIds) remove(id);
+    }
+
+    @Override
+    public int reapExpiredLeases() throws Exception {
+        int reaped = delegate.reapExpiredLeases();
+        if (reaped > 0) {
+            // Which in-flight jobs were reaped isn't reported, so forget all of them
+            synchronized (entries) {
+                for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                    JobState s = it.next().job.getState();
+                    if (s == JobState.RUNNING || s == JobState.PROCESSING) it.remove();
+                }
+            }
+        }
+        return reaped;
+    }
+
+    @Override
+    public void moveToDLQ(Job job) throws Exception {
+        delegate.moveToDLQ(job);
+        remove(job.getId());
+    }
+
+    @Override
+    public void deleteJobById(String jobId) throws Exception {
+        delegate.deleteJobById(jobId);
+        remove(jobId);
+    }
+
+    @Override
+    public Optional<Job> retryFromDLQ(String id) throws Exception {
+        Optional<Job> job = delegate.retryFromDLQ(id);
+        // Back in jobs as a new row
+        job.ifPresent(j -> put(j, 0));
+        return job;
+    }
+
+    @Override
+    public int deleteJobs(JobState state, Collection<String> jobIds) throws Exception {
+        int deleted = delegate.deleteJobs(state, jobIds);
+        for (String id : jobIds) remove(id);
+        return deleted;
+    }
+
+    private Entry peek(String id) {
+        synchronized (entries) {
+            return entries.get(id);
+        }
+    }
+
+    private void put(Job job, long version) {
+        Job j = copy(job);
+        j.setVersion(version);
+        synchronized (entries) {
+            entries.put(j.getId(), new Entry(j, version, System.nanoTime() + ttlNanos, UNCHECKED));
+        }
+    }
+
+    // Applies one row update to the cached job if the entry is still the one seen before the write.
+    // If another write replaced it meanwhile, the two can't be ordered here, so the entry is dropped.
+    private void advance(String id, Entry before, Consumer<Job> change) {
+        synchronized (entries) {
+            Entry now = entries.get(id);
+            if (now == null) return;
+            if (now != before) {
+                entries.remove(id);
+                return;
+            }
+            Job j = copy(before.job);
+            change.accept(j);
+            j.setVersion(before.version + 1);
+            entries.put(id, new Entry(j, j.getVersion(), System.nanoTime() + ttlNanos, UNCHECKED));
+        }
+    }
+
+    private void remove(String id) {
+        synchronized (entries) {
+            entries.remove(id);
+        }
+    }
+
+    // --- pass-through ---
+
+    @Override
+    public long jobVersion(String jobId) throws Exception {
+        return delegate.jobVersion(jobId);
+    }
+
+    @Override
+    public List<Job> listByState(JobState state) throws Exception {
+        return delegate.listByState(state);
+    }
+
+    @Override
+    public int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        return delegate.forEachByState(state, afterId, limit, consumer);
+    }
+
+    @Override
+    public Map<JobState, Long> countByState() throws Exception {
+        return delegate.countByState();
+    }
+
+    @Override
+    public int renewLeases(String workerId) throws Exception {
+        return delegate.renewLeases(workerId);
+    }
+
+    @Override
+    public Optional<Instant> nextScheduledRunAt() throws Exception {
+        return delegate.nextScheduledRunAt();
+    }
+
+    @Override
+    public List<Job> findOldest(JobState state, Instant createdBefore, int limit) throws Exception {
+        return delegate.findOldest(state, createdBefore, limit);
+    }
+
+    @Override
+    public List<Job> listDLQ() throws Exception {
+        return delegate.listDLQ();
+    }
+
+    @Override
+    public int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        return delegate.forEachInDLQ(afterId, limit, consumer);
+    }
+
+    @Override
+    public Optional<Job> findInDLQ(String id) throws Exception {
+        return delegate.findInDLQ(id);
+    }
+
+    @Override
+    public void deleteFromDLQ(String jobId) throws Exception {
+        delegate.deleteFromDLQ(jobId);
+    }
+
+    @Override
+    public List<Job> findOldestInDLQ(Instant failedBefore, int limit) throws Exception {
+        return delegate.findOldestInDLQ(failedBefore, limit);
+    }
+
+    @Override
+    public long countDLQ() throws Exception {
+        return delegate.countDLQ();
+    }
+
+    @Override
+    public int deleteFromDLQ(Collection<String> jobIds) throws Exception {
+        return delegate.deleteFromDLQ(jobIds);
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) throws Exception {
+        return delegate.incrementalVacuum(pages);
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        delegate.checkpoint();
+    }
+
+    @Override
+    public long dataVersion() throws Exception {
+        return delegate.dataVersion();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    // --- statistics ---
+
+    public long getHitCount() {
+        synchronized (entries) { return hits; }
+    }
+
+    // Includes the stale reads
+    public long getMissCount() {
+        synchronized (entries) { return misses; }
+    }
+
+    // Entries found out of date by their row version and reloaded
+    public long getStaleCount() {
+        synchronized (entries) { return stale; }
+    }
+
+    public long getEvictionCount() {
+        synchronized (entries) { return evictions; }
+    }
+
+    public long getExpiredCount() {
+        synchronized (entries) { return expirations; }
+    }
+
+    public int getSize() {
+        synchronized (entries) { return entries.size(); }
+    }
+
+    // Same shape as a findById result: no output
+    private static Job copy(Job src) {
+        Job j = new Job(src.getId(), src.getCommand(), src.getMaxRetries());
+        j.setAttempts(src.getAttempts());
+        j.setState(src.getState());
+        j.setCreatedAt(src.getCreatedAt());
+        j.setNextRunAt(src.getNextRunAt());
+        j.setLastError(src.getLastError());
+        j.setOutputPath(src.getOutputPath());
+        j.setQueue(src.getQueue());
+        j.setPriority(src.getPriority());
+        j.setTimeoutSeconds(src.getTimeoutSeconds());
+        j.setVersion(src.getVersion());
+        j.setUpdatedAt(src.getUpdatedAt());
+        return j;
+    }
+}
@@ -0,0 +1,91 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What one throttled claim may still take under each {@link Throttle.Rule}, and what it
+ * actually took, so the unused part of the reservation can be handed back afterwards.
+ */
+class ClaimBudget {
+
+    private final Throttle throttle;
+    private final Map<Throttle.Rule, Integer> reserved = new HashMap<>();
+    private final Map<Throttle.Rule, Integer> allowance = new HashMap<>();
+    private final Map<Throttle.Rule, Integer> used = new HashMap<>();
+    // Claimed rows that turned out to be over a prefix limit; they go straight back to PENDING
+    final List<String> rejected = new ArrayList<>();
+    // Capped rules each admitted job holds a slot in until it leaves RUNNING/PROCESSING
+    final Map<String, List<Throttle.Rule>> held = new HashMap<>();
+
+    ClaimBudget(Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    void reserve(Throttle.Rule rule, int n) {
+        reserved.put(rule, n);
+        allowance.put(rule, n);
+    }
+
+    Set<Throttle.Rule> rules() {
+        return reserved.keySet();
+    }
+
+    int allowance(Throttle.Rule rule) {
+        return allowance.getOrDefault(rule, 0);
+    }
+
+    void limit(Throttle.Rule rule, int n) {
+        allowance.put(rule, Math.min(allowance(rule), n));
+    }
+
+    int queueAllowance(String queue) {
+        Throttle.Rule r = throttle.forQueue(queue);
+        return r == null ? Integer.MAX_VALUE : allowance(r);
+    }
+
+    // Prefix rules with nothing left; their jobs are excluded from the claim query
+    List<Throttle.Rule> closedPrefixes() {
+        List<Throttle.Rule> out = new ArrayList<>();
+        for (Throttle.Rule r : throttle.prefixRules()) {
+            if (allowance(r) == 0) out.add(r);
+        }
+        return out;
+    }
+
+    // Charges claimed jobs against their rules; anything over a limit is set aside in rejected
+    List<Job> admit(List<Job> claimed) {
+        List<Job> accepted = new ArrayList<>(claimed.size());
+        for (Job job : claimed) {
+            Throttle.Rule q = throttle.forQueue(job.getQueue());
+            Throttle.Rule p = throttle.forCommand(job.getCommand());
+            if ((q != null && allowance(q) == 0) || (p != null && allowance(p) == 0)) {
+                rejected.add(job.getId());
+                continue;
+            }
+            List<Throttle.Rule> slots = new ArrayList<>(2);
+            for (Throttle.Rule r : new Throttle.Rule[]{q, p}) {
+                if (r == null) continue;
+                allowance.merge(r, -1, Integer::sum);
+                used.merge(r, 1, Integer::sum);
+                if (r.capped()) slots.add(r);
+            }
+            if (!slots.isEmpty()) held.put(job.getId(), slots);
+            accepted.add(job);
+        }
+        return accepted;
+    }
+
+    int used(Throttle.Rule rule) {
+        return used.getOrDefault(rule, 0);
+    }
+
+    int unused(Throttle.Rule rule) {
+        return reserved.getOrDefault(rule, 0) - used(rule);
+    }
+}
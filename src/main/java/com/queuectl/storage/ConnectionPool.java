@@ -0,0 +1,108 @@
+package com.queuectl.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small bounded pool of long-lived SQLite connections.
+ * Connections are opened lazily up to {@code maxSize}, get their pragmas applied once,
+ * and are handed back to the pool when the borrower closes them.
+ * The pool size also bounds how many threads can be inside the (carrier-pinning) native
+ * SQLite driver at once; everyone else parks in {@link #borrow()}.
+ */
+class ConnectionPool implements AutoCloseable {
+
+    private final String dbUrl;
+    private final int maxSize;
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private int created;
+    private volatile boolean closed;
+
+    ConnectionPool(String dbUrl, int maxSize) {
+        this.dbUrl = dbUrl;
+        this.maxSize = Math.max(1, maxSize);
+        this.idle = new ArrayBlockingQueue<>(this.maxSize);
+    }
+
+    PooledConnection borrow() throws SQLException, InterruptedException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        PooledConnection pc = idle.poll();
+        if (pc != null) return pc;
+
+        // ReentrantLock rather than synchronized so virtual threads park instead of pinning their carrier
+        lock.lock();
+        try {
+            if (created < maxSize) {
+                pc = new PooledConnection(this, open());
+                all.add(pc);
+                created++;
+                return pc;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return idle.take();
+    }
+
+    void release(PooledConnection pc) {
+        try {
+            Connection c = pc.raw();
+            if (c.isClosed()) {
+                discard(pc);
+                return;
+            }
+            if (!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            discard(pc);
+            return;
+        }
+        if (closed) {
+            pc.destroy();
+            return;
+        }
+        idle.offer(pc);
+    }
+
+    private Connection open() throws SQLException {
+        Connection c = DriverManager.getConnection(dbUrl);
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("PRAGMA busy_timeout=5000;");
+            // Must precede the WAL switch, which fixes the header of a new file; no-op on existing ones
+            st.execute("PRAGMA auto_vacuum=INCREMENTAL;");
+            st.execute("PRAGMA journal_mode=WAL;");
+            st.executeUpdate("PRAGMA synchronous=NORMAL;");
+        }
+        return c;
+    }
+
+    private void discard(PooledConnection pc) {
+        lock.lock();
+        try {
+            pc.destroy();
+            if (all.remove(pc)) created--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (PooledConnection pc : all) pc.destroy();
+        all.clear();
+        idle.clear();
+    }
+}
@@ -0,0 +1,430 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind decorator that coalesces per-job state transitions and commits them
+ * in one transaction every {@code intervalMs} or every {@code maxRecords} jobs.
+ *
+ * <p>In {@link Durability#SYNC} mode a write returns only after the commit that
+ * contains it (many callers share one commit). In {@link Durability#ASYNC} mode it
+ * returns immediately and is flushed in the background and on {@link #close()}.
+ * Reads that return job rows wait for outstanding writes first.
+ *
+ * <p>If a commit fails, SYNC writers get the exception. ASYNC writers have already
+ * returned, so the failed batch is only logged to stderr and its transitions are lost.
+ * The affected jobs keep their last committed state until their worker stops renewing
+ * its leases and the reaper re-queues them.
+ */
+public class GroupCommitRepository implements JobRepository {
+
+    public enum Durability { SYNC, ASYNC }
+
+    private final JobRepository delegate;
+    private final Durability durability;
+    private final long intervalNanos;
+    private final int maxRecords;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private Batch pending = new Batch();
+    private Batch inFlight;
+    private long firstPendingAt;
+    private boolean flushRequested;
+    private boolean closed;
+
+    private Thread flusher;
+    private long flushes;
+    private long recordsFlushed;
+
+    public GroupCommitRepository(JobRepository delegate, Durability durability, long intervalMs, int maxRecords) {
+        this.delegate = delegate;
+        this.durability = durability;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMs));
+        this.maxRecords = Math.max(1, maxRecords);
+    }
+
+    @Override
+    public void init() throws Exception {
+        delegate.init();
+        flusher = new Thread(this::flushLoop, "queuectl-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // --- buffered writes ---
+
+    @Override
+    public void updateJobState(String jobId, JobState state) throws Exception {
+        if (state == JobState.DEAD) {
+            // A bare DEAD state is not a DLQ move, so it can't be folded into a transition
+            sync();
+            delegate.updateJobState(jobId, state);
+            return;
+        }
+        record(List.of(JobTransition.update(jobId, state, null, null, null, null)));
+    }
+
+    @Override
+    public void updateJobOutput(String jobId, String output) throws Exception {
+        record(List.of(JobTransition.update(jobId, null, null, null, output, null)));
+    }
+
+    @Override
+    public void updateJobAttempts(String jobId, int attempts) throws Exception {
+        record(List.of(JobTransition.update(jobId, null, attempts, null, null, null)));
+    }
+
+    @Override
+    public void scheduleRetry(String jobId, int attempts, Instant nextRunAt) throws Exception {
+        record(List.of(JobTransition.update(jobId, JobState.PENDING, attempts, nextRunAt, null, null)));
+    }
+
+    @Override
+    public void applyTransitions(List<JobTransition> transitions) throws Exception {
+        record(transitions);
+    }
+
+    private void record(List<JobTransition> transitions) throws Exception {
+        if (transitions.isEmpty()) return;
+        Batch batch;
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("Repository is closed");
+            batch = pending;
+            boolean wasEmpty = batch.transitions.isEmpty();
+            if (wasEmpty) firstPendingAt = System.nanoTime();
+            for (JobTransition t : transitions) {
+                batch.transitions.merge(t.getJobId(), t, JobTransition::mergedWith);
+            }
+            // Wake the flusher to start the interval timer, or to flush early once the batch is full
+            if (wasEmpty || batch.transitions.size() >= maxRecords) work.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (durability == Durability.SYNC) awaitFlushed(batch);
+    }
+
+    // Blocks until every write recorded so far has been committed
+    public void sync() throws Exception {
+        Batch batch;
+        lock.lock();
+        try {
+            if (!pending.transitions.isEmpty()) {
+                batch = pending;
+                // Readers want their data now rather than at the end of the interval
+                flushRequested = true;
+                work.signal();
+            } else if (inFlight != null) {
+                batch = inFlight;
+            } else {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Batches commit in order, so the last one's outcome covers everything before it
+        awaitFlushed(batch);
+    }
+
+    // Throws if that batch's commit failed; each caller sees only the batch its own write went into
+    private void awaitFlushed(Batch batch) throws Exception {
+        lock.lock();
+        try {
+            while (!batch.done) {
+                if (flusher == null || !flusher.isAlive()) throw new IllegalStateException("Group commit flusher is not running");
+                flushed.await(100, TimeUnit.MILLISECONDS);
+            }
+            if (batch.failure != null) {
+                throw new Exception("Group commit failed: " + batch.failure.getMessage(), batch.failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Batch batch;
+            lock.lock();
+            try {
+                while (!closed && (pending.transitions.isEmpty()
+                        || !flushRequested && pending.transitions.size() < maxRecords && dueInNanos() > 0)) {
+                    if (pending.transitions.isEmpty()) {
+                        work.await();
+                    } else {
+                        work.awaitNanos(dueInNanos());
+                    }
+                }
+                if (pending.transitions.isEmpty()) return; // closed and drained
+
+                batch = pending;
+                inFlight = batch;
+                flushRequested = false;
+                pending = new Batch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            Exception failure = null;
+            try {
+                delegate.applyTransitions(new ArrayList<>(batch.transitions.values()));
+            } catch (Exception e) {
+                failure = e;
+                System.err.println("Group commit of " + batch.transitions.size() + " job(s) failed: " + e.getMessage());
+            }
+
+            lock.lock();
+            try {
+                inFlight = null;
+                batch.done = true;
+                batch.failure = failure;
+                flushes++;
+                recordsFlushed += batch.transitions.size();
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long dueInNanos() {
+        return intervalNanos - (System.nanoTime() - firstPendingAt);
+    }
+
+    // --- reads served from the buffer where possible ---
+
+    @Override
+    public JobState getJobState(String jobId) throws Exception {
+        lock.lock();
+        try {
+            JobTransition t = pending.transitions.get(jobId);
+            if ((t == null || t.getState() == null) && inFlight != null) t = inFlight.transitions.get(jobId);
+            if (t != null && t.getState() != null && t.getState() != JobState.DEAD) return t.getState();
+        } finally {
+            lock.unlock();
+        }
+        sync();
+        return delegate.getJobState(jobId);
+    }
+
+    @Override
+    public long jobVersion(String jobId) throws Exception {
+        sync();
+        return delegate.jobVersion(jobId);
+    }
+
+    @Override
+    public Optional<Job> findById(String id) throws Exception {
+        sync();
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<Job> listByState(JobState state) throws Exception {
+        sync();
+        return delegate.listByState(state);
+    }
+
+    @Override
+    public int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        sync();
+        return delegate.forEachByState(state, afterId, limit, consumer);
+    }
+
+    @Override
+    public Map<JobState, Long> countByState() throws Exception {
+        sync();
+        return delegate.countByState();
+    }
+
+    @Override
+    public List<Job> listDLQ() throws Exception {
+        sync();
+        return delegate.listDLQ();
+    }
+
+    @Override
+    public int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        sync();
+        return delegate.forEachInDLQ(afterId, limit, consumer);
+    }
+
+    @Override
+    public List<Job> findOldest(JobState state, Instant createdBefore, int limit) throws Exception {
+        sync();
+        return delegate.findOldest(state, createdBefore, limit);
+    }
+
+    @Override
+    public List<Job> findOldestInDLQ(Instant failedBefore, int limit) throws Exception {
+        sync();
+        return delegate.findOldestInDLQ(failedBefore, limit);
+    }
+
+    @Override
+    public long countDLQ() throws Exception {
+        sync();
+        return delegate.countDLQ();
+    }
+
+    @Override
+    public Optional<Job> findInDLQ(String id) throws Exception {
+        sync();
+        return delegate.findInDLQ(id);
+    }
+
+    // --- direct writes, ordered after anything already buffered ---
+
+    @Override
+    public void save(Job job) throws Exception {
+        delegate.save(job);
+    }
+
+    @Override
+    public void saveAll(List<Job> jobs) throws Exception {
+        delegate.saveAll(jobs);
+    }
+
+    @Override
+    public void moveToDLQ(Job job) throws Exception {
+        sync();
+        delegate.moveToDLQ(job);
+    }
+
+    @Override
+    public void releaseJobs(Collection<String> jobIds) throws Exception {
+        sync();
+        delegate.releaseJobs(jobIds);
+    }
+
+    @Override
+    public void deleteJobById(String jobId) throws Exception {
+        sync();
+        delegate.deleteJobById(jobId);
+    }
+
+    @Override
+    public void deleteFromDLQ(String jobId) throws Exception {
+        sync();
+        delegate.deleteFromDLQ(jobId);
+    }
+
+    @Override
+    public Optional<Job> retryFromDLQ(String id) throws Exception {
+        sync();
+        return delegate.retryFromDLQ(id);
+    }
+
+    @Override
+    public int deleteJobs(JobState state, Collection<String> jobIds) throws Exception {
+        sync();
+        return delegate.deleteJobs(state, jobIds);
+    }
+
+    @Override
+    public int deleteFromDLQ(Collection<String> jobIds) throws Exception {
+        sync();
+        return delegate.deleteFromDLQ(jobIds);
+    }
+
+    // --- claims and scheduling go straight to the store ---
+
+    @Override
+    public Optional<Job> fetchNextPendingJob() throws Exception {
+        return delegate.fetchNextPendingJob();
+    }
+
+    @Override
+    public List<Job> claimBatch(String workerId, int n) throws Exception {
+        return delegate.claimBatch(workerId, n);
+    }
+
+    @Override
+    public int renewLeases(String workerId) throws Exception {
+        return delegate.renewLeases(workerId);
+    }
+
+    @Override
+    public int reapExpiredLeases() throws Exception {
+        // A buffered completion must land before its lease is judged
+        sync();
+        return delegate.reapExpiredLeases();
+    }
+
+    @Override
+    public Optional<Instant> nextScheduledRunAt() throws Exception {
+        return delegate.nextScheduledRunAt();
+    }
+
+    @Override
+    public long dataVersion() throws Exception {
+        return delegate.dataVersion();
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) throws Exception {
+        return delegate.incrementalVacuum(pages);
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        delegate.checkpoint();
+    }
+
+    public long getFlushCount() {
+        lock.lock();
+        try { return flushes; } finally { lock.unlock(); }
+    }
+
+    public long getRecordsFlushed() {
+        lock.lock();
+        try { return recordsFlushed; } finally { lock.unlock(); }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // No timeout: closing the delegate under a slow final flush would lose the buffered writes
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while flushing buffered writes; the store was left open", e);
+            }
+        }
+        delegate.close();
+    }
+
+    /** One commit's worth of merged transitions, and how its commit went once it has run. */
+    private static final class Batch {
+        final Map<String, JobTransition> transitions = new LinkedHashMap<>();
+        boolean done;
+        Exception failure;
+    }
+}
@@ -0,0 +1,837 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * {@link JobRepository} held entirely in this process's memory ({@code storage_engine=memory}),
+ * for ephemeral high-rate queues that can afford to lose everything when the process exits.
+ *
+ * <p>Every job lives in one {@link Entry}, whose monitor guards all changes to it. Runnable
+ * jobs sit in a per-queue skip list in claim order (priority, then age), so claiming is a
+ * lock-free {@code pollFirst}. Jobs waiting out a retry backoff sit in one skip list ordered
+ * by due time and move over as they come due. Per-state id sets back paging and counts.
+ * There are no multi-job transactions: each job's change is atomic on its own.
+ *
+ * <p>It is also the index behind {@link JournalJobRepository}, which persists it through
+ * the {@link ChangeLog} hook.
+ */
+public class InMemoryJobRepository implements JobRepository {
+
+    private static final class Entry {
+        final Job job;              // private copy; callers only ever see copies
+        String workerId;
+        Instant leaseExpiresAt;
+        Ticket ticket;              // its place in a ready or delayed set while PENDING, else null
+        boolean deleted;
+
+        Entry(Job job) {
+            this.job = job;
+        }
+    }
+
+    // A pending job's place in line. Replaced, never changed, when the job moves; whoever
+    // removes a ticket from its set owns it, and it is only acted on if still the entry's current one
+    private static final class Ticket {
+        final Entry entry;
+        final int priority;
+        final Instant createdAt;
+        final Instant runAt;
+        final boolean delayed;
+        final long seq;
+
+        Ticket(Entry entry, Instant runAt, boolean delayed, long seq) {
+            this.entry = entry;
+            this.priority = entry.job.getPriority();
+            this.createdAt = entry.job.getCreatedAt();
+            this.runAt = runAt;
+            this.delayed = delayed;
+            this.seq = seq;
+        }
+    }
+
+    // Same order as the SQLite claim: priority DESC, created_at
+    private static final Comparator<Ticket> READY_ORDER = Comparator
+            .comparingInt((Ticket t) -> t.priority).reversed()
+            .thenComparing((Ticket t) -> t.createdAt)
+            .thenComparingLong(t -> t.seq);
+
+    private static final Comparator<Ticket> DUE_ORDER = Comparator
+            .comparing((Ticket t) -> t.runAt)
+            .thenComparingLong(t -> t.seq);
+
+    // The image keeps what a retry from the DLQ has to restore; its output is not kept
+    private record Dead(Job image, String reason, Instant failedAt) {
+        String id() {
+            return image.getId();
+        }
+    }
+
+    /**
+     * Receives every change that has to survive a restart, as whole-job images. Called under
+     * the job's monitor, so one job's changes arrive in the order they were made. Claims,
+     * releases and lease renewals are left out: an in-flight job found on restart is
+     * recovered through its lease either way.
+     */
+    interface ChangeLog {
+        void put(Job image, String workerId, Instant leaseExpiresAt);
+        void delete(String jobId);
+        void putDead(Job image, String reason, Instant failedAt);
+        void deleteDead(String id);
+        // A DLQ entry put back in the queue as image: the entry's removal and the put in one change
+        void revive(Job image);
+    }
+
+    private static final ChangeLog NONE = new ChangeLog() {
+        public void put(Job image, String workerId, Instant leaseExpiresAt) {}
+        public void delete(String jobId) {}
+        public void putDead(Job image, String reason, Instant failedAt) {}
+        public void deleteDead(String id) {}
+        public void revive(Job image) {}
+    };
+
+    private final Map<String, Entry> jobs = new ConcurrentHashMap<>();
+    private final Map<JobState, ConcurrentSkipListSet<String>> byState = new EnumMap<>(JobState.class);
+    // Sorted by name, so queues tie-break in the same order as on SQLite
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListSet<Ticket>> ready = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListSet<Ticket> delayed = new ConcurrentSkipListSet<>(DUE_ORDER);
+    private final ConcurrentSkipListMap<String, Dead> dlq = new ConcurrentSkipListMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final QueueScheduler queueScheduler;
+    private final Throttle throttle;
+    private final long leaseSeconds;
+    private final Map<String, List<Throttle.Rule>> heldSlots = new ConcurrentHashMap<>();
+    private final ChangeLog log;
+
+    public InMemoryJobRepository() {
+        this(NONE);
+    }
+
+    InMemoryJobRepository(ChangeLog log) {
+        this.log = log;
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.queueScheduler = new QueueScheduler(cfg.get("queue_weights", ""));
+        // Every claimer shares this process, so the local limits are already the global ones
+        this.throttle = new Throttle(cfg.get("queue_limits", ""), cfg.get("command_limits", ""), false);
+        this.leaseSeconds = Math.max(1, cfg.getInt("lease_seconds", 30));
+        for (JobState s : JobState.values()) byState.put(s, new ConcurrentSkipListSet<>());
+    }
+
+    @Override
+    public void init() {
+        // Nothing to create
+    }
+
+    @Override
+    public void save(Job job) {
+        insert(job);
+    }
+
+    @Override
+    public void saveAll(List<Job> jobs) {
+        List<String> done = new ArrayList<>(jobs.size());
+        try {
+            for (Job job : jobs) {
+                insert(job);
+                done.add(job.getId());
+            }
+        } catch (RuntimeException e) {
+            // All or nothing, like the SQLite batch
+            for (String id : done) deleteJobById(id);
+            throw e;
+        }
+    }
+
+    private void insert(Job job) {
+        Entry e = new Entry(copy(job, true));
+        synchronized (e) {
+            if (jobs.putIfAbsent(job.getId(), e) != null) {
+                throw new IllegalArgumentException("Job already exists: " + job.getId());
+            }
+            byState.get(job.getState()).add(job.getId());
+            if (job.getState() == JobState.PENDING) place(e, Instant.now());
+            logged(e);
+        }
+    }
+
+    @Override
+    public Optional<Job> findById(String id) {
+        Entry e = jobs.get(id);
+        if (e == null) return Optional.empty();
+        synchronized (e) {
+            return e.deleted ? Optional.empty() : Optional.of(copy(e.job, false));
+        }
+    }
+
+    @Override
+    public List<Job> listByState(JobState state) {
+        List<Job> out = new ArrayList<>();
+        forEachByState(state, null, 0, out::add);
+        return out;
+    }
+
+    @Override
+    public int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) {
+        ConcurrentSkipListSet<String> ids = byState.get(state);
+        int n = 0;
+        for (String id : afterId == null ? ids : ids.tailSet(afterId, false)) {
+            if (limit > 0 && n >= limit) break;
+            Entry e = jobs.get(id);
+            if (e == null) continue;
+            Job job;
+            synchronized (e) {
+                // Moved on since the index was read
+                if (e.deleted || e.job.getState() != state) continue;
+                job = copy(e.job, false);
+            }
+            consumer.accept(job);
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public Map<JobState, Long> countByState() {
+        Map<JobState, Long> out = new EnumMap<>(JobState.class);
+        for (JobState s : JobState.values()) out.put(s, (long) byState.get(s).size());
+        return out;
+    }
+
+    @Override
+    public void updateJobState(String id, JobState state) {
+        Entry e = jobs.get(id);
+        if (e == null) return;
+        synchronized (e) {
+            if (e.deleted) return;
+            moveTo(e, state);
+            logged(e);
+        }
+        if (!isInFlight(state)) releaseSlots(id);
+    }
+
+    @Override
+    public void updateJobOutput(String id, String output) {
+        Entry e = jobs.get(id);
+        if (e == null) return;
+        synchronized (e) {
+            if (e.deleted) return;
+            e.job.setOutput(output);
+            logged(e);
+        }
+    }
+
+    @Override
+    public JobState getJobState(String id) {
+        Entry e = jobs.get(id);
+        if (e != null) {
+            synchronized (e) {
+                if (!e.deleted) return e.job.getState();
+            }
+        }
+        throw new RuntimeException("Job not found: " + id);
+    }
+
+    // Nothing outside this process can change a job, so every job is at the same version
+    @Override
+    public long jobVersion(String id) {
+        Entry e = jobs.get(id);
+        if (e == null) return -1;
+        synchronized (e) {
+            return e.deleted ? -1 : 0;
+        }
+    }
+
+    @Override
+    public void updateJobAttempts(String id, int attempts) {
+        Entry e = jobs.get(id);
+        if (e == null) return;
+        synchronized (e) {
+            if (e.deleted) return;
+            e.job.setAttempts(attempts);
+            logged(e);
+        }
+    }
+
+    @Override
+    public void moveToDLQ(Job job) {
+        String reason = job.getLastError() != null ? job.getLastError() : "Exceeded max retries";
+        bury(new Dead(deadImage(job), reason, Instant.now()));
+        Entry e = jobs.get(job.getId());
+        if (e != null) {
+            synchronized (e) {
+                if (!e.deleted) remove(e);
+            }
+        }
+        releaseSlots(job.getId());
+    }
+
+    @Override
+    public Optional<Job> fetchNextPendingJob() {
+        List<Job> claimed = claimBatch(null, 1);
+        return claimed.isEmpty() ? Optional.empty() : Optional.of(claimed.get(0));
+    }
+
+    @Override
+    public List<Job> claimBatch(String workerId, int n) {
+        n = Math.max(1, n);
+        Instant now = Instant.now();
+        promoteDue(now);
+        List<String> active = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentSkipListSet<Ticket>> q : ready.entrySet()) {
+            if (!q.getValue().isEmpty()) active.add(q.getKey());
+        }
+        if (active.isEmpty()) return new ArrayList<>();
+        if (!throttle.isEmpty()) return claimThrottled(active, n, workerId, now);
+        if (active.size() == 1) return claimFromQueue(active.get(0), n, workerId, now, List.of());
+        return queueScheduler.claimAcross(active, n, null, (q, k, skip) -> claimFromQueue(q, k, workerId, now, skip));
+    }
+
+    private List<Job> claimFromQueue(String queue, int n, String workerId, Instant now, List<Throttle.Rule> skipPrefixes) {
+        ConcurrentSkipListSet<Ticket> line = ready.get(queue);
+        List<Job> out = new ArrayList<>(n);
+        Instant lease = now.plusSeconds(leaseSeconds);
+        if (skipPrefixes.isEmpty()) {
+            while (out.size() < n) {
+                Ticket t = line.pollFirst();
+                if (t == null) break;
+                Job job = take(t, workerId, lease);
+                if (job != null) out.add(job);
+            }
+            return out;
+        }
+        // Throttled prefixes stay where they are; everything behind them can still be claimed
+        for (Iterator<Ticket> it = line.iterator(); it.hasNext() && out.size() < n; ) {
+            Ticket t = it.next();
+            if (matchesAny(t.entry.job.getCommand(), skipPrefixes) || !line.remove(t)) continue;
+            Job job = take(t, workerId, lease);
+            if (job != null) out.add(job);
+        }
+        return out;
+    }
+
+    private static boolean matchesAny(String command, List<Throttle.Rule> prefixes) {
+        for (Throttle.Rule r : prefixes) {
+            if (command.startsWith(r.match)) return true;
+        }
+        return false;
+    }
+
+    // Claims the job behind a ticket this thread removed from its set, unless the job moved on meanwhile
+    private Job take(Ticket t, String workerId, Instant lease) {
+        Entry e = t.entry;
+        synchronized (e) {
+            if (e.ticket != t) return null;
+            e.ticket = null;
+            e.workerId = workerId;
+            e.leaseExpiresAt = lease;
+            moveTo(e, JobState.RUNNING);
+            return copy(e.job, false);
+        }
+    }
+
+    private List<Job> claimThrottled(List<String> active, int n, String workerId, Instant now) {
+        long nowMicros = throttle.nowMicros();
+        ClaimBudget budget = new ClaimBudget(throttle);
+        for (Throttle.Rule r : throttle.rules()) {
+            if (r.byQueue && !active.contains(r.match)) continue;
+            budget.reserve(r, r.reserve(n, nowMicros));
+        }
+        List<Job> out = queueScheduler.claimAcross(active, n, budget, (q, k, skip) -> claimFromQueue(q, k, workerId, now, skip));
+        if (!budget.rejected.isEmpty()) requeue(budget.rejected);
+        for (Throttle.Rule r : budget.rules()) r.unreserve(budget.unused(r));
+        heldSlots.putAll(budget.held);
+        return out;
+    }
+
+    private void releaseSlots(String jobId) {
+        if (heldSlots.isEmpty()) return;
+        List<Throttle.Rule> rules = heldSlots.remove(jobId);
+        if (rules != null) {
+            for (Throttle.Rule r : rules) r.release(1);
+        }
+    }
+
+    @Override
+    public void releaseJobs(Collection<String> jobIds) {
+        requeue(jobIds);
+        for (String id : jobIds) releaseSlots(id);
+    }
+
+    // Claimed but never started: straight back in line, in their old place
+    private void requeue(Collection<String> jobIds) {
+        for (String id : jobIds) {
+            Entry e = jobs.get(id);
+            if (e == null) continue;
+            synchronized (e) {
+                if (e.deleted || e.job.getState() != JobState.RUNNING) continue;
+                e.workerId = null;
+                moveTo(e, JobState.PENDING);
+            }
+        }
+    }
+
+    @Override
+    public int renewLeases(String workerId) {
+        Instant lease = Instant.now().plusSeconds(leaseSeconds);
+        int renewed = 0;
+        for (JobState s : new JobState[]{JobState.RUNNING, JobState.PROCESSING}) {
+            for (String id : byState.get(s)) {
+                Entry e = jobs.get(id);
+                if (e == null) continue;
+                synchronized (e) {
+                    if (e.deleted || !isInFlight(e.job.getState()) || !workerId.equals(e.workerId)) continue;
+                    e.leaseExpiresAt = lease;
+                    renewed++;
+                }
+            }
+        }
+        return renewed;
+    }
+
+    @Override
+    public int reapExpiredLeases() {
+        Instant now = Instant.now();
+        int reaped = 0;
+        List<String> released = new ArrayList<>();
+        for (JobState s : new JobState[]{JobState.RUNNING, JobState.PROCESSING}) {
+            for (String id : byState.get(s)) {
+                Entry e = jobs.get(id);
+                if (e == null) continue;
+                synchronized (e) {
+                    if (e.deleted || e.job.getState() != s || e.leaseExpiresAt == null || !e.leaseExpiresAt.isBefore(now)) continue;
+                    String lost = "Lease expired: worker " + (e.workerId == null ? "?" : e.workerId) + " stopped responding";
+                    // Same rule as SQLite: a job that was mid-run used up an attempt
+                    if (s == JobState.PROCESSING) {
+                        if (e.job.getAttempts() + 1 > e.job.getMaxRetries()) {
+                            bury(new Dead(deadImage(e.job), lost, now));
+                            remove(e);
+                            released.add(id);
+                            reaped++;
+                            continue;
+                        }
+                        e.job.setAttempts(e.job.getAttempts() + 1);
+                        e.job.setLastError(lost);
+                    }
+                    e.workerId = null;
+                    e.leaseExpiresAt = null;
+                    moveTo(e, JobState.PENDING);
+                    logged(e);
+                    released.add(id);
+                    reaped++;
+                }
+            }
+        }
+        for (String id : released) releaseSlots(id);
+        return reaped;
+    }
+
+    @Override
+    public void scheduleRetry(String jobId, int attempts, Instant nextRunAt) {
+        Entry e = jobs.get(jobId);
+        if (e != null) {
+            synchronized (e) {
+                if (!e.deleted) {
+                    e.job.setAttempts(attempts);
+                    e.job.setNextRunAt(nextRunAt);
+                    e.workerId = null;
+                    moveTo(e, JobState.PENDING);
+                    logged(e);
+                }
+            }
+        }
+        releaseSlots(jobId);
+    }
+
+    @Override
+    public Optional<Instant> nextScheduledRunAt() {
+        Instant now = Instant.now();
+        Optional<Instant> next = Optional.empty();
+        for (Ticket t : delayed) {
+            if (t.runAt.isAfter(now)) {
+                next = Optional.of(t.runAt);
+                break;
+            }
+        }
+        long refill = throttle.isEmpty() ? 0 : throttle.nextTokenMicros(throttle.nowMicros());
+        if (refill > 0) {
+            Instant at = Instant.EPOCH.plus(refill, ChronoUnit.MICROS);
+            if (next.isEmpty() || at.isBefore(next.get())) next = Optional.of(at);
+        }
+        return next;
+    }
+
+    // Moves retries whose backoff has run out into their queue's ready line
+    private void promoteDue(Instant now) {
+        Ticket t;
+        while ((t = first(delayed)) != null && !t.runAt.isAfter(now)) {
+            if (!delayed.remove(t)) continue;
+            Entry e = t.entry;
+            synchronized (e) {
+                if (e.ticket == t) place(e, now);
+            }
+        }
+    }
+
+    private static Ticket first(ConcurrentSkipListSet<Ticket> set) {
+        try {
+            return set.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void applyTransitions(List<JobTransition> transitions) {
+        Instant now = Instant.now();
+        for (JobTransition t : transitions) {
+            Entry e = jobs.get(t.getJobId());
+            if (e == null) continue;
+            synchronized (e) {
+                if (e.deleted) continue;
+                Job job = e.job;
+                if (t.getState() == JobState.DEAD) {
+                    String reason = t.getLastError() != null ? t.getLastError() : "Exceeded max retries";
+                    bury(new Dead(deadImage(job), reason, now));
+                    remove(e);
+                    continue;
+                }
+                if (t.getAttempts() != null) job.setAttempts(t.getAttempts());
+                if (t.getNextRunAt() != null) job.setNextRunAt(t.getNextRunAt());
+                if (t.getOutput() != null) {
+                    job.setOutput(t.getOutput());
+                    // A new run replaces the old log pointer, even with null
+                    job.setOutputPath(t.getOutputPath());
+                }
+                if (t.getLastError() != null) job.setLastError(t.getLastError());
+                if (t.getState() != null) {
+                    if (t.getState() == JobState.PENDING) e.workerId = null;
+                    moveTo(e, t.getState());
+                }
+                job.setUpdatedAt(now);
+                logged(e);
+            }
+        }
+        for (JobTransition t : transitions) {
+            if (t.getState() != null && !isInFlight(t.getState())) releaseSlots(t.getJobId());
+        }
+    }
+
+    @Override
+    public void deleteJobById(String jobId) {
+        Entry e = jobs.get(jobId);
+        if (e != null) {
+            synchronized (e) {
+                if (!e.deleted) remove(e);
+            }
+        }
+        releaseSlots(jobId);
+    }
+
+    @Override
+    public List<Job> findOldest(JobState state, Instant createdBefore, int limit) {
+        if (limit <= 0) return new ArrayList<>();
+        // No age index: one pass over the state's ids, keeping the oldest limit in a bounded heap
+        Comparator<Job> byAge = Comparator.comparing(Job::getCreatedAt);
+        PriorityQueue<Job> oldest = new PriorityQueue<>(byAge.reversed());
+        for (String id : byState.get(state)) {
+            Entry e = jobs.get(id);
+            if (e == null) continue;
+            synchronized (e) {
+                if (e.deleted || e.job.getState() != state) continue;
+                if (createdBefore != null && !e.job.getCreatedAt().isBefore(createdBefore)) continue;
+                if (oldest.size() == limit && !e.job.getCreatedAt().isBefore(oldest.peek().getCreatedAt())) continue;
+                Job job = copy(e.job, true);
+                job.setWorkerId(e.workerId);
+                oldest.add(job);
+            }
+            if (oldest.size() > limit) oldest.poll();
+        }
+        List<Job> out = new ArrayList<>(oldest);
+        out.sort(byAge);
+        return out;
+    }
+
+    @Override
+    public int deleteJobs(JobState state, Collection<String> jobIds) {
+        int deleted = 0;
+        for (String id : jobIds) {
+            Entry e = jobs.get(id);
+            if (e == null) continue;
+            synchronized (e) {
+                // Skips anything that moved on since it was selected
+                if (e.deleted || e.job.getState() != state) continue;
+                remove(e);
+                deleted++;
+            }
+            releaseSlots(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Job> listDLQ() {
+        List<Dead> all = new ArrayList<>(dlq.values());
+        all.sort(Comparator.comparing(Dead::failedAt).reversed());
+        List<Job> out = new ArrayList<>(all.size());
+        for (Dead d : all) out.add(deadJob(d));
+        return out;
+    }
+
+    @Override
+    public int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) {
+        int n = 0;
+        for (Dead d : (afterId == null ? dlq : dlq.tailMap(afterId, false)).values()) {
+            if (limit > 0 && n >= limit) break;
+            consumer.accept(deadJob(d));
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public Optional<Job> findInDLQ(String id) {
+        Dead d = dlq.get(id);
+        return d == null ? Optional.empty() : Optional.of(deadJob(d));
+    }
+
+    @Override
+    public Optional<Job> retryFromDLQ(String id) {
+        // Whoever removes the entry owns the retry
+        Dead d = dlq.remove(id);
+        if (d == null) return Optional.empty();
+        Job job = deadJob(d);
+        job.setState(JobState.PENDING);
+        Entry e = new Entry(copy(job, true));
+        synchronized (e) {
+            if (jobs.putIfAbsent(id, e) != null) {
+                dlq.put(id, d);
+                throw new IllegalArgumentException("Job already exists: " + id);
+            }
+            byState.get(JobState.PENDING).add(id);
+            place(e, Instant.now());
+            log.revive(e.job);
+        }
+        return Optional.of(job);
+    }
+
+    @Override
+    public void deleteFromDLQ(String jobId) {
+        unbury(jobId);
+    }
+
+    @Override
+    public List<Job> findOldestInDLQ(Instant failedBefore, int limit) {
+        List<Dead> matching = new ArrayList<>();
+        for (Dead d : dlq.values()) {
+            if (failedBefore == null || d.failedAt().isBefore(failedBefore)) matching.add(d);
+        }
+        matching.sort(Comparator.comparing(Dead::failedAt));
+        int n = Math.max(0, Math.min(limit, matching.size()));
+        List<Job> out = new ArrayList<>(n);
+        for (Dead d : matching.subList(0, n)) {
+            Job job = deadJob(d);
+            job.setLastError(d.reason());
+            job.setUpdatedAt(d.failedAt());
+            out.add(job);
+        }
+        return out;
+    }
+
+    @Override
+    public long countDLQ() {
+        return dlq.size();
+    }
+
+    @Override
+    public int deleteFromDLQ(Collection<String> jobIds) {
+        int deleted = 0;
+        for (String id : jobIds) {
+            if (unbury(id)) deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) {
+        return 0;
+    }
+
+    @Override
+    public void checkpoint() {
+        // Nothing on disk
+    }
+
+    // Nothing outside this process can change the queue, and everything inside it signals the workers itself
+    @Override
+    public long dataVersion() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        // Jobs go with the process
+    }
+
+    // --- restart support for JournalJobRepository; none of these are logged ---
+
+    // Replaces whatever is stored under the image's id
+    void restore(Job image, String workerId, Instant leaseExpiresAt) {
+        restoreDelete(image.getId());
+        // The image was decoded for this call alone, so the entry can own it
+        Entry e = new Entry(image);
+        synchronized (e) {
+            e.workerId = workerId;
+            e.leaseExpiresAt = leaseExpiresAt;
+            jobs.put(image.getId(), e);
+            byState.get(image.getState()).add(image.getId());
+            if (image.getState() == JobState.PENDING) place(e, Instant.now());
+        }
+    }
+
+    void restoreDelete(String jobId) {
+        Entry e = jobs.get(jobId);
+        if (e == null) return;
+        synchronized (e) {
+            if (!e.deleted) remove(e, false);
+        }
+    }
+
+    void restoreDead(Job image, String reason, Instant failedAt) {
+        dlq.put(image.getId(), new Dead(image, reason, failedAt));
+    }
+
+    void restoreDeadDelete(String id) {
+        dlq.remove(id);
+    }
+
+    // Replays the current contents into sink, one job at a time, while changes carry on
+    void forEachImage(ChangeLog sink) {
+        for (Entry e : jobs.values()) {
+            synchronized (e) {
+                if (!e.deleted) sink.put(e.job, e.workerId, e.leaseExpiresAt);
+            }
+        }
+        for (Dead d : dlq.values()) sink.putDead(d.image(), d.reason(), d.failedAt());
+    }
+
+    // --- helpers; callers hold the entry's monitor ---
+
+    private void logged(Entry e) {
+        log.put(e.job, e.workerId, e.leaseExpiresAt);
+    }
+
+    private void bury(Dead d) {
+        dlq.put(d.id(), d);
+        log.putDead(d.image(), d.reason(), d.failedAt());
+    }
+
+    private boolean unbury(String id) {
+        if (dlq.remove(id) == null) return false;
+        log.deleteDead(id);
+        return true;
+    }
+
+    // Changes state, keeping the per-state index and the ready/delayed lines in step
+    private void moveTo(Entry e, JobState to) {
+        JobState from = e.job.getState();
+        unplace(e);
+        if (from != to) {
+            byState.get(from).remove(e.job.getId());
+            byState.get(to).add(e.job.getId());
+        }
+        e.job.setState(to);
+        if (to == JobState.PENDING) place(e, Instant.now());
+    }
+
+    private void place(Entry e, Instant now) {
+        Instant runAt = e.job.getNextRunAt();
+        boolean later = runAt != null && runAt.isAfter(now);
+        Ticket t = new Ticket(e, runAt, later, seq.incrementAndGet());
+        e.ticket = t;
+        if (later) {
+            delayed.add(t);
+        } else {
+            ready.computeIfAbsent(e.job.getQueue(), q -> new ConcurrentSkipListSet<>(READY_ORDER)).add(t);
+        }
+    }
+
+    private void unplace(Entry e) {
+        Ticket t = e.ticket;
+        if (t == null) return;
+        e.ticket = null;
+        // May already be gone if a claimer polled it; it then finds the ticket stale and skips it
+        if (t.delayed) {
+            delayed.remove(t);
+        } else {
+            ConcurrentSkipListSet<Ticket> line = ready.get(e.job.getQueue());
+            if (line != null) line.remove(t);
+        }
+    }
+
+    private void remove(Entry e) {
+        remove(e, true);
+    }
+
+    private void remove(Entry e, boolean logged) {
+        unplace(e);
+        byState.get(e.job.getState()).remove(e.job.getId());
+        jobs.remove(e.job.getId(), e);
+        e.deleted = true;
+        if (logged) log.delete(e.job.getId());
+    }
+
+    private static boolean isInFlight(JobState state) {
+        return state == JobState.RUNNING || state == JobState.PROCESSING;
+    }
+
+    private static Job copy(Job src, boolean withOutput) {
+        Job j = new Job(src.getId(), src.getCommand(), src.getMaxRetries());
+        j.setAttempts(src.getAttempts());
+        j.setState(src.getState());
+        j.setCreatedAt(src.getCreatedAt());
+        j.setNextRunAt(src.getNextRunAt());
+        j.setLastError(src.getLastError());
+        j.setOutputPath(src.getOutputPath());
+        j.setQueue(src.getQueue());
+        j.setPriority(src.getPriority());
+        j.setTimeoutSeconds(src.getTimeoutSeconds());
+        if (withOutput) j.setOutput(src.getOutput());
+        j.setUpdatedAt(src.getUpdatedAt());
+        return j;
+    }
+
+    private static Job deadImage(Job job) {
+        Job image = copy(job, false);
+        image.setState(JobState.DEAD);
+        return image;
+    }
+
+    private static Job deadJob(Dead d) {
+        Job job = new Job(d.id(), d.image().getCommand(), d.image().getMaxRetries());
+        job.setState(JobState.DEAD);
+        job.setQueue(d.image().getQueue());
+        job.setPriority(d.image().getPriority());
+        job.setTimeoutSeconds(d.image().getTimeoutSeconds());
+        return job;
+    }
+}
@@ -2,24 +2,66 @@ package com.queuectl.storage;
 
 import com.queuectl.core.Job;
 import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
-public interface JobRepository {
+public interface JobRepository extends AutoCloseable {
     void init() throws Exception;
     void save(Job job) throws Exception;
+    void saveAll(List<Job> jobs) throws Exception;
     Optional<Job> findById(String id) throws Exception;
     List<Job> listByState(JobState state) throws Exception;
+    // Keyset pages in id order: rows with id > afterId (null = from the start), at most limit (<= 0 = all).
+    // Rows are handed to the consumer as they are read; it must not call back into the repository.
+    int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) throws Exception;
+    Map<JobState, Long> countByState() throws Exception;
     void updateJobState(String jobId, JobState state) throws Exception;
     void updateJobOutput(String jobId, String output) throws Exception;
     JobState getJobState(String jobId) throws Exception;
+    // Row version, bumped by every change to the job's stored fields; -1 if there is no such job.
+    // Stores that no other process can write may return a constant for every job they hold.
+    long jobVersion(String jobId) throws Exception;
     void updateJobAttempts(String jobId, int attempts) throws Exception;
     void moveToDLQ(Job job) throws Exception;
     Optional<Job> fetchNextPendingJob() throws Exception;
+    List<Job> claimBatch(String workerId, int n) throws Exception;
+    void releaseJobs(Collection<String> jobIds) throws Exception;
+    // Extends the lease on every in-flight job claimed under workerId, in one statement; returns how many
+    int renewLeases(String workerId) throws Exception;
+    // Re-queues in-flight jobs whose lease ran out, or moves them to the DLQ if out of retries; returns how many
+    int reapExpiredLeases() throws Exception;
+    void scheduleRetry(String jobId, int attempts, Instant nextRunAt) throws Exception;
+    Optional<Instant> nextScheduledRunAt() throws Exception;
+    // Applies all transitions in one transaction
+    void applyTransitions(List<JobTransition> transitions) throws Exception;
     void deleteJobById(String jobId) throws Exception;
+    // Retention: oldest rows of a state by created_at (null cutoff = any age), output included
+    List<Job> findOldest(JobState state, Instant createdBefore, int limit) throws Exception;
+    // Deletes in one transaction, skipping ids no longer in that state; returns rows deleted
+    int deleteJobs(JobState state, Collection<String> jobIds) throws Exception;
     List<Job> listDLQ() throws Exception;
+    int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) throws Exception;
     Optional<Job> findInDLQ(String id) throws Exception;
     void deleteFromDLQ(String jobId) throws Exception;
+    // Moves a DLQ entry back into the queue as a fresh PENDING job in one step, so a crash can't
+    // lose it in between; empty if there is no such entry
+    Optional<Job> retryFromDLQ(String id) throws Exception;
+    List<Job> findOldestInDLQ(Instant failedBefore, int limit) throws Exception;
+    long countDLQ() throws Exception;
+    int deleteFromDLQ(Collection<String> jobIds) throws Exception;
+    // Returns up to pages free pages to the OS in one short transaction; returns how many were freed
+    int incrementalVacuum(int pages) throws Exception;
+    void checkpoint() throws Exception;
+    // Counter that changes whenever another connection or process commits; used to wake idle workers
+    long dataVersion() throws Exception;
+    // Narrowed from AutoCloseable: releasing the store throws nothing checked, in particular not InterruptedException
+    @Override
+    void close();
 
 }
@@ -0,0 +1,584 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log behind {@link JournalJobRepository}.
+ *
+ * <p>Records go into fixed-size, preallocated segment files mapped with
+ * {@link MappedByteBuffer}, each framed as {@code [length][crc32c][type][payload]}. A zero
+ * length or a bad checksum marks the end of what was written, so a record torn by a crash
+ * is dropped on replay. A checkpoint starts a new segment, writes every current job to a
+ * snapshot and deletes the segments the snapshot replaces. The snapshot is taken while
+ * writes carry on. That is safe because records are whole-job images and every change
+ * made after the new segment began is replayed on top of it.
+ */
+final class Journal implements InMemoryJobRepository.ChangeLog, Closeable {
+
+    // record: every append forced before it returns; group: callers wait for a shared force;
+    // os: the kernel writes pages back when it likes, as with SQLite's synchronous=NORMAL
+    enum Fsync { RECORD, GROUP, OS }
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte DEAD_PUT = 3;        // id and command only; written by older builds
+    private static final byte DEAD_DELETE = 4;
+    private static final byte DEAD_IMAGE = 5;
+    private static final byte REVIVE = 6;
+    private static final int HEADER = 8;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+
+    private static final class Segment {
+        final long index;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int pos;      // guarded by appendLock
+        int forced;   // guarded by syncLock
+
+        Segment(long index, FileChannel channel, MappedByteBuffer map) {
+            this.index = index;
+            this.channel = channel;
+            this.map = map;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final Fsync fsync;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Object syncLock = new Object();
+    private final Object checkpointLock = new Object();
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+    // Journal offset of the calling thread's last append, for commit()
+    private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+    private final AtomicLong durable = new AtomicLong();
+
+    private Segment current;          // guarded by appendLock
+    private long appended;            // bytes appended since open, guarded by appendLock
+    private long checkpointedAt;      // appended when the last checkpoint began, guarded by appendLock
+
+    private Journal(Path dir, int segmentBytes, Fsync fsync, FileChannel lockChannel, FileLock lock) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    // One process at a time: the index lives in its memory
+    static Journal open(Path dir, int segmentBytes, Fsync fsync) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel ch = FileChannel.open(dir.resolve("LOCK"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = ch.tryLock();
+        if (lock == null) {
+            ch.close();
+            throw new IOException("Journal " + dir + " is in use by another queuectl process");
+        }
+        return new Journal(dir, segmentBytes, fsync, ch, lock);
+    }
+
+    /** Loads the latest snapshot and every segment after it into index, then opens the journal for appends. */
+    void replay(InMemoryJobRepository index) throws IOException {
+        long snapshot = latest("snapshot-", ".snap");
+        if (snapshot > 0) {
+            try (FileChannel ch = FileChannel.open(snapshotPath(snapshot), StandardOpenOption.READ)) {
+                read(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), index);
+            }
+        }
+        List<Long> segments = new ArrayList<>();
+        for (long s : list("segment-", ".log")) {
+            if (s >= snapshot) segments.add(s);
+        }
+        long replayed = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            try (FileChannel ch = FileChannel.open(segmentPath(segments.get(i)), StandardOpenOption.READ)) {
+                replayed += read(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), index);
+            }
+        }
+        appendLock.lock();
+        try {
+            if (segments.isEmpty()) {
+                current = createSegment(Math.max(1, snapshot));
+            } else {
+                current = reopen(segments.get(segments.size() - 1), index);
+                // What was replayed counts towards the next checkpoint
+                appended = replayed + current.pos;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private Segment reopen(long index, InMemoryJobRepository repo) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(index), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (ch.size() < segmentBytes) preallocate(ch, ch.size());
+        int size = (int) Math.max(ch.size(), segmentBytes);
+        MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        Segment seg = new Segment(index, ch, map);
+        seg.pos = read(map, repo);
+        // A torn record may have left bytes behind the end; clear them so they can't be mistaken for records later
+        if (seg.pos + 4 <= size && map.getInt(seg.pos) != 0) {
+            byte[] zeros = new byte[1 << 16];
+            for (int at = seg.pos; at < size; at += zeros.length) map.put(at, zeros, 0, Math.min(zeros.length, size - at));
+            map.force();
+        }
+        seg.forced = seg.pos;
+        return seg;
+    }
+
+    // Applies every intact record in buf; returns where the intact records end
+    private static int read(ByteBuffer buf, InMemoryJobRepository index) {
+        CRC32C crc = new CRC32C();
+        int pos = 0;
+        while (pos + HEADER <= buf.limit()) {
+            int len = buf.getInt(pos);
+            if (len <= 0 || pos + HEADER + len > buf.limit()) break;
+            crc.reset();
+            crc.update(buf.slice(pos + HEADER, len));
+            if ((int) crc.getValue() != buf.getInt(pos + 4)) break;
+            apply(buf.slice(pos + HEADER, len), index);
+            pos += HEADER + len;
+        }
+        return pos;
+    }
+
+    private static void apply(ByteBuffer rec, InMemoryJobRepository index) {
+        byte type = rec.get();
+        switch (type) {
+            case PUT -> {
+                Job image = getJob(rec);
+                index.restore(image, getString(rec), getTime(rec));
+            }
+            case DELETE -> index.restoreDelete(getString(rec));
+            case DEAD_IMAGE -> index.restoreDead(getJob(rec), getString(rec), getTime(rec));
+            case DEAD_PUT -> {
+                // What the DLQ used to hand back on a retry: the default queue, priority and retry budget
+                Job image = new Job(getString(rec), getString(rec), 3);
+                image.setState(JobState.DEAD);
+                index.restoreDead(image, getString(rec), getTime(rec));
+            }
+            case DEAD_DELETE -> index.restoreDeadDelete(getString(rec));
+            case REVIVE -> {
+                Job image = getJob(rec);
+                index.restoreDeadDelete(image.getId());
+                index.restore(image, null, null);
+            }
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    // --- ChangeLog: called by the index with the job's monitor held ---
+
+    @Override
+    public void put(Job image, String workerId, Instant leaseExpiresAt) {
+        append(encodePut(encoders.get(), image, workerId, leaseExpiresAt));
+    }
+
+    @Override
+    public void delete(String jobId) {
+        Encoder enc = encoders.get().begin(DELETE);
+        enc.putString(jobId);
+        append(enc.finish());
+    }
+
+    @Override
+    public void putDead(Job image, String reason, Instant failedAt) {
+        append(encodeDead(encoders.get(), image, reason, failedAt));
+    }
+
+    @Override
+    public void deleteDead(String id) {
+        Encoder enc = encoders.get().begin(DEAD_DELETE);
+        enc.putString(id);
+        append(enc.finish());
+    }
+
+    @Override
+    public void revive(Job image) {
+        Encoder enc = encoders.get().begin(REVIVE);
+        putJob(enc, image);
+        append(enc.finish());
+    }
+
+    private static ByteBuffer encodePut(Encoder enc, Job job, String workerId, Instant lease) {
+        enc.begin(PUT);
+        putJob(enc, job);
+        enc.putString(workerId);
+        enc.putTime(lease);
+        return enc.finish();
+    }
+
+    private static ByteBuffer encodeDead(Encoder enc, Job image, String reason, Instant failedAt) {
+        enc.begin(DEAD_IMAGE);
+        putJob(enc, image);
+        enc.putString(reason);
+        enc.putTime(failedAt);
+        return enc.finish();
+    }
+
+    private static void putJob(Encoder enc, Job job) {
+        enc.putString(job.getId());
+        enc.putString(job.getCommand());
+        enc.putString(job.getState().name());
+        enc.putInt(job.getAttempts());
+        enc.putInt(job.getMaxRetries());
+        enc.putTime(job.getCreatedAt());
+        enc.putTime(job.getUpdatedAt());
+        enc.putTime(job.getNextRunAt());
+        enc.putString(job.getLastError());
+        enc.putString(job.getOutput());
+        enc.putString(job.getOutputPath());
+        enc.putString(job.getQueue());
+        enc.putInt(job.getPriority());
+        enc.putInt(job.getTimeoutSeconds());
+    }
+
+    private static Job getJob(ByteBuffer rec) {
+        String id = getString(rec);
+        String command = getString(rec);
+        JobState state = JobState.valueOf(getString(rec));
+        int attempts = rec.getInt();
+        Job image = new Job(id, command, rec.getInt());
+        image.setState(state);
+        image.setAttempts(attempts);
+        image.setCreatedAt(getTime(rec));
+        Instant updatedAt = getTime(rec);
+        image.setNextRunAt(getTime(rec));
+        image.setLastError(getString(rec));
+        image.setOutput(getString(rec));
+        image.setOutputPath(getString(rec));
+        image.setQueue(getString(rec));
+        image.setPriority(rec.getInt());
+        image.setTimeoutSeconds(rec.getInt());
+        // The setters above stamp updatedAt, so it goes in last
+        image.setUpdatedAt(updatedAt);
+        return image;
+    }
+
+    private void append(ByteBuffer rec) {
+        int len = rec.remaining();
+        if (len > segmentBytes) {
+            throw new IllegalArgumentException("Journal record of " + len + " bytes doesn't fit in a segment");
+        }
+        appendLock.lock();
+        try {
+            if (current.pos + len > segmentBytes) roll();
+            current.map.put(current.pos, rec, 0, len);
+            current.pos += len;
+            appended += len;
+            lastAppended.get()[0] = appended;
+            if (fsync == Fsync.RECORD) {
+                current.map.force(current.pos - len, len);
+                durable.accumulateAndGet(appended, Math::max);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once the calling thread's appends are as durable as the fsync policy promises.
+     * Under {@code group}, whoever gets here first forces everything written so far, and the
+     * threads queued behind it usually find their records already covered.
+     */
+    void commit() {
+        long want = lastAppended.get()[0];
+        if (fsync != Fsync.GROUP || want <= durable.get()) return;
+        synchronized (syncLock) {
+            if (want <= durable.get()) return;
+            Segment seg;
+            int to;
+            long upTo;
+            appendLock.lock();
+            try {
+                seg = current;
+                to = seg.pos;
+                upTo = appended;
+            } finally {
+                appendLock.unlock();
+            }
+            // Anything in earlier segments was forced when they were rolled
+            if (to > seg.forced) seg.map.force(seg.forced, to - seg.forced);
+            seg.forced = to;
+            durable.accumulateAndGet(upTo, Math::max);
+        }
+    }
+
+    // Caller holds appendLock
+    private void roll() throws IOException {
+        Segment old = current;
+        if (fsync != Fsync.OS) {
+            old.map.force();
+            durable.accumulateAndGet(appended, Math::max);
+        }
+        current = createSegment(old.index + 1);
+        // The mapping outlives the channel, so a force still in flight on it is unaffected
+        old.channel.close();
+    }
+
+    private Segment createSegment(long index) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Real zeros rather than a sparse file: a full disk fails here, not as a fault on a mapped write
+        preallocate(ch, 0);
+        return new Segment(index, ch, ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+    }
+
+    private void preallocate(FileChannel ch, long from) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate(1 << 20);
+        for (long at = from; at < segmentBytes; ) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), segmentBytes - at));
+            at += ch.write(zeros, at);
+        }
+    }
+
+    long bytesSinceCheckpoint() {
+        appendLock.lock();
+        try {
+            return appended - checkpointedAt;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment, snapshots index into a file that stands in for everything before
+     * it, then deletes the older segments and snapshots. This is also the compaction: deleted
+     * and superseded records don't survive into the snapshot.
+     */
+    void checkpoint(InMemoryJobRepository index) throws IOException {
+        synchronized (checkpointLock) {
+            long covered;
+            appendLock.lock();
+            try {
+                roll();
+                covered = current.index;
+                checkpointedAt = appended;
+            } finally {
+                appendLock.unlock();
+            }
+
+            Path tmp = dir.resolve("snapshot.tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                SnapshotWriter writer = new SnapshotWriter(ch);
+                index.forEachImage(writer);
+                writer.flush();
+                ch.force(true);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(tmp, snapshotPath(covered), StandardCopyOption.ATOMIC_MOVE);
+            syncDir();
+
+            for (long s : list("segment-", ".log")) {
+                if (s < covered) Files.deleteIfExists(segmentPath(s));
+            }
+            for (long s : list("snapshot-", ".snap")) {
+                if (s < covered) Files.deleteIfExists(snapshotPath(s));
+            }
+        }
+    }
+
+    /** Streams images into a snapshot file in the same record format as the segments. */
+    private static final class SnapshotWriter implements InMemoryJobRepository.ChangeLog {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+        private final Encoder enc = new Encoder();
+
+        SnapshotWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void put(Job image, String workerId, Instant leaseExpiresAt) {
+            write(encodePut(enc, image, workerId, leaseExpiresAt));
+        }
+
+        @Override
+        public void putDead(Job image, String reason, Instant failedAt) {
+            write(encodeDead(enc, image, reason, failedAt));
+        }
+
+        @Override
+        public void delete(String jobId) {
+            // A snapshot only holds what exists
+        }
+
+        @Override
+        public void deleteDead(String id) {
+        }
+
+        @Override
+        public void revive(Job image) {
+            put(image, null, null);
+        }
+
+        private void write(ByteBuffer rec) {
+            try {
+                if (rec.remaining() > buf.remaining()) flush();
+                if (rec.remaining() > buf.capacity()) {
+                    while (rec.hasRemaining()) channel.write(rec);
+                } else {
+                    buf.put(rec);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            buf.clear();
+        }
+    }
+
+    private void syncDir() {
+        // Makes the rename durable; directories can't be opened this way on every platform
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return dir.resolve(String.format("segment-%08d.log", index));
+    }
+
+    private Path snapshotPath(long index) {
+        return dir.resolve(String.format("snapshot-%08d.snap", index));
+    }
+
+    private long latest(String prefix, String suffix) throws IOException {
+        List<Long> all = list(prefix, suffix);
+        return all.isEmpty() ? 0 : all.get(all.size() - 1);
+    }
+
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(prefix) && n.endsWith(suffix))
+                    .forEach(n -> {
+                        try {
+                            out.add(Long.parseLong(n.substring(prefix.length(), n.length() - suffix.length())));
+                        } catch (NumberFormatException ignored) {
+                        }
+                    });
+        }
+        out.sort(null);
+        return out;
+    }
+
+    @Override
+    public void close() {
+        // Let a running checkpoint finish rather than leave a half-written snapshot behind
+        synchronized (checkpointLock) {
+            appendLock.lock();
+            try {
+                current.map.force();
+                current.channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close journal: " + e.getMessage());
+            } finally {
+                appendLock.unlock();
+            }
+            try { lock.release(); } catch (IOException ignored) {}
+            try { lockChannel.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // --- record encoding ---
+
+    /** Reusable per-thread record buffer; strings are length-prefixed UTF-8, -1 for null. */
+    private static final class Encoder {
+        private ByteBuffer buf = ByteBuffer.allocate(512);
+        private final CRC32C crc = new CRC32C();
+
+        Encoder begin(byte type) {
+            buf.clear();
+            buf.position(HEADER);
+            buf.put(type);
+            return this;
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putTime(Instant t) {
+            ensure(8);
+            buf.putLong(t == null ? NULL_TIME : t.getEpochSecond() * 1_000_000 + t.getNano() / 1000);
+        }
+
+        void putString(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + b.length);
+            buf.putInt(b.length);
+            buf.put(b);
+        }
+
+        private void ensure(int n) {
+            if (buf.remaining() >= n) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+
+        ByteBuffer finish() {
+            int len = buf.position() - HEADER;
+            crc.reset();
+            crc.update(buf.array(), HEADER, len);
+            buf.putInt(0, len);
+            buf.putInt(4, (int) crc.getValue());
+            buf.flip();
+            return buf;
+        }
+    }
+
+    private static String getString(ByteBuffer rec) {
+        int len = rec.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        rec.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static Instant getTime(ByteBuffer rec) {
+        long micros = rec.getLong();
+        if (micros == NULL_TIME) return null;
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1000L);
+    }
+}
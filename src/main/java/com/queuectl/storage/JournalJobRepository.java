@@ -0,0 +1,286 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * {@code storage_engine=journal}: the {@link InMemoryJobRepository} index made durable by an
+ * append-only, memory-mapped {@link Journal}. Reads never touch the disk. Each change is one
+ * record appended under a short lock, with no write transaction to wait for. On startup the
+ * last snapshot and the segments after it are replayed. A background thread checkpoints
+ * once {@code journal_checkpoint_mb} has been written, which keeps both replay and the
+ * files on disk short.
+ *
+ * <p>Only one process can have the journal open; other commands reach it through that
+ * process's control socket.
+ *
+ * <p>Known limitation: the engine was meant to enqueue about 10x faster than SQLite, and
+ * it doesn't. With the default {@code journal_fsync=os} it measured about 3x faster for
+ * {@code saveAll} and 5-7x for single saves. {@code record} and {@code group} manage only
+ * about 1.7k jobs/s, because every msync costs about 0.6 ms and appends stall behind the
+ * page being written back. Choose them only for durability, not speed.
+ */
+public class JournalJobRepository implements JobRepository {
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final Journal.Fsync fsync;
+    private final long checkpointBytes;
+    private Journal journal;
+    private InMemoryJobRepository index;
+    private Thread checkpointer;
+    private final Object wake = new Object();
+    private boolean running = true;
+
+    public JournalJobRepository() {
+        ConfigManager cfg = ConfigManager.getInstance();
+        this.dir = Path.of(cfg.get("journal_dir", "journal"));
+        this.segmentBytes = Math.max(1, Math.min(1024, cfg.getInt("journal_segment_mb", 64))) << 20;
+        this.fsync = Journal.Fsync.valueOf(cfg.get("journal_fsync", "os").toUpperCase());
+        this.checkpointBytes = Math.max(1, cfg.getInt("journal_checkpoint_mb", 64)) * (1L << 20);
+    }
+
+    @Override
+    public void init() throws Exception {
+        journal = Journal.open(dir, segmentBytes, fsync);
+        index = new InMemoryJobRepository(journal);
+        journal.replay(index);
+        checkpointer = new Thread(this::checkpointLoop, "queuectl-journal-checkpoint");
+        checkpointer.setDaemon(true);
+        checkpointer.start();
+    }
+
+    // Waits on a monitor instead of sleeping: an interrupt would close the snapshot's file channel mid-write
+    private void checkpointLoop() {
+        while (true) {
+            synchronized (wake) {
+                if (!running) return;
+                try { wake.wait(1000); } catch (InterruptedException e) { return; }
+                if (!running) return;
+            }
+            try {
+                if (journal.bytesSinceCheckpoint() >= checkpointBytes) journal.checkpoint(index);
+            } catch (Exception e) {
+                System.err.println("Journal checkpoint failed: " + e);
+            }
+        }
+    }
+
+    // Writes wait for durability per journal_fsync after the index has taken the change
+
+    @Override
+    public void save(Job job) {
+        index.save(job);
+        journal.commit();
+    }
+
+    @Override
+    public void saveAll(List<Job> jobs) {
+        index.saveAll(jobs);
+        journal.commit();
+    }
+
+    @Override
+    public void updateJobState(String jobId, JobState state) {
+        index.updateJobState(jobId, state);
+        journal.commit();
+    }
+
+    @Override
+    public void updateJobOutput(String jobId, String output) {
+        index.updateJobOutput(jobId, output);
+        journal.commit();
+    }
+
+    @Override
+    public void updateJobAttempts(String jobId, int attempts) {
+        index.updateJobAttempts(jobId, attempts);
+        journal.commit();
+    }
+
+    @Override
+    public void moveToDLQ(Job job) {
+        index.moveToDLQ(job);
+        journal.commit();
+    }
+
+    @Override
+    public int reapExpiredLeases() {
+        int reaped = index.reapExpiredLeases();
+        if (reaped > 0) journal.commit();
+        return reaped;
+    }
+
+    @Override
+    public void scheduleRetry(String jobId, int attempts, Instant nextRunAt) {
+        index.scheduleRetry(jobId, attempts, nextRunAt);
+        journal.commit();
+    }
+
+    @Override
+    public void applyTransitions(List<JobTransition> transitions) {
+        index.applyTransitions(transitions);
+        journal.commit();
+    }
+
+    @Override
+    public void deleteJobById(String jobId) {
+        index.deleteJobById(jobId);
+        journal.commit();
+    }
+
+    @Override
+    public int deleteJobs(JobState state, Collection<String> jobIds) {
+        int deleted = index.deleteJobs(state, jobIds);
+        journal.commit();
+        return deleted;
+    }
+
+    @Override
+    public void deleteFromDLQ(String jobId) {
+        index.deleteFromDLQ(jobId);
+        journal.commit();
+    }
+
+    @Override
+    public Optional<Job> retryFromDLQ(String id) {
+        Optional<Job> job = index.retryFromDLQ(id);
+        journal.commit();
+        return job;
+    }
+
+    @Override
+    public int deleteFromDLQ(Collection<String> jobIds) {
+        int deleted = index.deleteFromDLQ(jobIds);
+        journal.commit();
+        return deleted;
+    }
+
+    // Claims, releases and renewals aren't journaled; a restart recovers in-flight jobs through their leases
+
+    @Override
+    public Optional<Job> fetchNextPendingJob() {
+        return index.fetchNextPendingJob();
+    }
+
+    @Override
+    public List<Job> claimBatch(String workerId, int n) {
+        return index.claimBatch(workerId, n);
+    }
+
+    @Override
+    public void releaseJobs(Collection<String> jobIds) {
+        index.releaseJobs(jobIds);
+    }
+
+    @Override
+    public int renewLeases(String workerId) {
+        return index.renewLeases(workerId);
+    }
+
+    // Reads come straight from the index
+
+    @Override
+    public Optional<Job> findById(String id) {
+        return index.findById(id);
+    }
+
+    @Override
+    public List<Job> listByState(JobState state) {
+        return index.listByState(state);
+    }
+
+    @Override
+    public int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) {
+        return index.forEachByState(state, afterId, limit, consumer);
+    }
+
+    @Override
+    public Map<JobState, Long> countByState() {
+        return index.countByState();
+    }
+
+    @Override
+    public JobState getJobState(String jobId) {
+        return index.getJobState(jobId);
+    }
+
+    @Override
+    public long jobVersion(String jobId) {
+        return index.jobVersion(jobId);
+    }
+
+    @Override
+    public Optional<Instant> nextScheduledRunAt() {
+        return index.nextScheduledRunAt();
+    }
+
+    @Override
+    public List<Job> findOldest(JobState state, Instant createdBefore, int limit) {
+        return index.findOldest(state, createdBefore, limit);
+    }
+
+    @Override
+    public List<Job> listDLQ() {
+        return index.listDLQ();
+    }
+
+    @Override
+    public int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) {
+        return index.forEachInDLQ(afterId, limit, consumer);
+    }
+
+    @Override
+    public Optional<Job> findInDLQ(String id) {
+        return index.findInDLQ(id);
+    }
+
+    @Override
+    public List<Job> findOldestInDLQ(Instant failedBefore, int limit) {
+        return index.findOldestInDLQ(failedBefore, limit);
+    }
+
+    @Override
+    public long countDLQ() {
+        return index.countDLQ();
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) {
+        return 0;
+    }
+
+    // Retention calls this after pruning: a checkpoint is what drops the pruned jobs from disk
+    @Override
+    public void checkpoint() throws Exception {
+        journal.checkpoint(index);
+    }
+
+    // The journal is locked to this process, so nothing else can commit to it
+    @Override
+    public long dataVersion() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        synchronized (wake) {
+            running = false;
+            wake.notifyAll();
+        }
+        if (checkpointer != null) {
+            try { checkpointer.join(); } catch (InterruptedException ignored) {}
+        }
+        if (journal != null) journal.close();
+    }
+}
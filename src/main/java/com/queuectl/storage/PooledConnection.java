@@ -0,0 +1,50 @@
+package com.queuectl.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A connection borrowed from {@link ConnectionPool}.
+ * Prepared statements are cached per connection and must not be closed by callers;
+ * closing this object returns the connection to the pool.
+ */
+class PooledConnection implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    PooledConnection(ConnectionPool pool, Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null || ps.isClosed()) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    Connection raw() {
+        return connection;
+    }
+
+    void destroy() {
+        for (PreparedStatement ps : statements.values()) {
+            try { ps.close(); } catch (SQLException ignored) {}
+        }
+        statements.clear();
+        try { connection.close(); } catch (SQLException ignored) {}
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
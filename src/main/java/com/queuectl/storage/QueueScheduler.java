@@ -0,0 +1,153 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stride scheduler that splits each claim batch across the queues that currently have
+ * pending jobs. A queue's pass advances by 1/weight for every slot it is given and the
+ * lowest pass goes next, so each queue's share of claims follows its weight however deep
+ * the other queues are. Queues that run dry are forgotten and rejoin at the current
+ * virtual time, so an idle queue can't bank credit and then monopolise the workers.
+ *
+ * <p>{@link #claimAcross} runs the whole split for a store, which supplies only the
+ * claim from a single queue.
+ */
+class QueueScheduler {
+
+    // One store's claim of up to n runnable jobs from a queue, leaving jobs under skipPrefixes where they are
+    @FunctionalInterface
+    interface QueueClaim<E extends Exception> {
+        List<Job> claim(String queue, int n, List<Throttle.Rule> skipPrefixes) throws E;
+    }
+
+    private final Map<String, Double> weights = new HashMap<>();
+    private final Map<String, Double> pass = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private double virtualTime;
+
+    // spec: "interactive=10,batch=1"; unlisted queues weigh 1
+    QueueScheduler(String spec) {
+        if (spec == null) return;
+        for (String entry : spec.split(",")) {
+            String[] kv = entry.split("=", 2);
+            if (kv.length != 2 || kv[0].isBlank()) continue;
+            try {
+                double w = Double.parseDouble(kv[1].trim());
+                if (w > 0) weights.put(kv[0].trim(), w);
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad queue weight: " + entry);
+            }
+        }
+    }
+
+    // Returns the queue for each of n slots, in the order they should be handed out
+    List<String> plan(Collection<String> active, int n) {
+        List<String> slots = new ArrayList<>(n);
+        lock.lock();
+        try {
+            pass.keySet().retainAll(active);
+            for (String q : active) pass.putIfAbsent(q, virtualTime);
+            for (int i = 0; i < n; i++) {
+                String next = null;
+                double lowest = Double.MAX_VALUE;
+                for (String q : active) {
+                    double p = pass.get(q);
+                    if (p < lowest) {
+                        lowest = p;
+                        next = q;
+                    }
+                }
+                virtualTime = lowest;
+                pass.put(next, lowest + stride(next));
+                slots.add(next);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return slots;
+    }
+
+    // Adjusts a queue's pass by the slots it actually used beyond (or short of) its plan
+    void charge(String queue, int slots) {
+        lock.lock();
+        try {
+            pass.computeIfPresent(queue, (q, p) -> p + slots * stride(q));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Splits a batch of n by queue weight and claims every queue's share; budget (nullable) caps each share
+    <E extends Exception> List<Job> claimAcross(List<String> active, int n, ClaimBudget budget,
+                                                QueueClaim<E> fromQueue) throws E {
+        // Throttled queues are skipped, not waited on; their slots go to the others
+        List<String> open = new ArrayList<>(active.size());
+        for (String q : active) {
+            if (budget == null || budget.queueAllowance(q) > 0) open.add(q);
+        }
+        if (open.isEmpty()) return new ArrayList<>();
+
+        List<String> plan = plan(open, n);
+        Map<String, Integer> wanted = new LinkedHashMap<>();
+        for (String q : plan) wanted.merge(q, 1, Integer::sum);
+
+        Map<String, List<Job>> claimed = new HashMap<>();
+        int unfilled = 0;
+        for (Map.Entry<String, Integer> e : wanted.entrySet()) {
+            List<Job> got = claimCapped(e.getKey(), e.getValue(), budget, fromQueue);
+            claimed.put(e.getKey(), got);
+            int missing = e.getValue() - got.size();
+            if (missing > 0) {
+                // Only not-yet-due or throttled jobs left there; don't charge the queue for slots it couldn't use
+                charge(e.getKey(), -missing);
+                unfilled += missing;
+            }
+        }
+        // Stay work-conserving: hand unused slots to queues that still have runnable jobs
+        for (String q : open) {
+            if (unfilled == 0) break;
+            List<Job> got = claimed.getOrDefault(q, List.of());
+            if (wanted.containsKey(q) && got.size() < wanted.get(q)) continue;
+            List<Job> extra = claimCapped(q, unfilled, budget, fromQueue);
+            if (extra.isEmpty()) continue;
+            claimed.computeIfAbsent(q, k -> new ArrayList<>()).addAll(extra);
+            charge(q, extra.size());
+            unfilled -= extra.size();
+        }
+
+        // Hand jobs out in the interleaved order the scheduler chose
+        List<Job> out = new ArrayList<>(n);
+        Map<String, Integer> taken = new HashMap<>();
+        for (String q : plan) {
+            List<Job> got = claimed.get(q);
+            int i = taken.merge(q, 1, Integer::sum) - 1;
+            if (got != null && i < got.size()) out.add(got.get(i));
+        }
+        for (Map.Entry<String, List<Job>> e : claimed.entrySet()) {
+            int used = taken.getOrDefault(e.getKey(), 0);
+            List<Job> got = e.getValue();
+            if (used < got.size()) out.addAll(got.subList(used, got.size()));
+        }
+        return out;
+    }
+
+    private static <E extends Exception> List<Job> claimCapped(String queue, int n, ClaimBudget budget,
+                                                               QueueClaim<E> fromQueue) throws E {
+        if (budget == null) return fromQueue.claim(queue, n, List.of());
+        int limit = Math.min(n, budget.queueAllowance(queue));
+        if (limit <= 0) return new ArrayList<>();
+        return budget.admit(fromQueue.claim(queue, limit, budget.closedPrefixes()));
+    }
+
+    private double stride(String queue) {
+        return 1.0 / weights.getOrDefault(queue, 1.0);
+    }
+}
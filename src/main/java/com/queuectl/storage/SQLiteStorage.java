@@ -2,28 +2,63 @@ package com.queuectl.storage;
 
 import com.queuectl.core.Job;
 import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
 import com.queuectl.core.ConfigManager;
 
 import java.sql.*;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class SQLiteStorage implements JobRepository {
     private final String dbUrl;
+    private final ConnectionPool pool;
+    private final boolean statusCounters;
+    private final QueueScheduler queueScheduler;
+    private final Throttle throttle;
+    private final long leaseSeconds;
+    private final Map<String, List<Throttle.Rule>> heldSlots = new ConcurrentHashMap<>();
+    private Connection watchConnection;
+    private PreparedStatement watchStatement;
 
     public SQLiteStorage() {
-        String path = ConfigManager.getInstance().get("database_path", "queuectl.db");
+        this(ConfigManager.getInstance().get("database_path", "queuectl.db"), null);
+    }
+
+    // One shard of a ShardedSQLiteStorage: its own file, and the throttle shared by all shards (null = from config)
+    SQLiteStorage(String path, Throttle throttle) {
+        ConfigManager cfg = ConfigManager.getInstance();
         this.dbUrl = "jdbc:sqlite:" + path;
+        this.pool = new ConnectionPool(dbUrl, cfg.getInt("db_pool_size", 4));
+        this.statusCounters = Boolean.parseBoolean(cfg.get("status_counters", "true"));
+        this.queueScheduler = new QueueScheduler(cfg.get("queue_weights", ""));
+        this.throttle = throttle != null ? throttle : new Throttle(cfg.get("queue_limits", ""), cfg.get("command_limits", ""),
+                !cfg.get("throttle_scope", "global").equalsIgnoreCase("process"));
+        this.leaseSeconds = Math.max(1, cfg.getInt("lease_seconds", 30));
     }
 
-    private Connection conn() throws SQLException {
-        Connection c = DriverManager.getConnection(dbUrl);
-        try (Statement st = c.createStatement()) {
-            st.executeUpdate("PRAGMA busy_timeout=5000;");
-        }
-        return c;
+    // Fixed-width UTC timestamps so TEXT comparisons and ORDER BY match chronological order
+    private static final DateTimeFormatter TS = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static String ts(Instant instant) {
+        return TS.format(instant);
+    }
+
+    private PooledConnection conn() throws SQLException, InterruptedException {
+        return pool.borrow();
     }
 
     @Override
@@ -33,43 +68,167 @@ public class SQLiteStorage implements JobRepository {
             if (in == null) throw new RuntimeException("schema.sql not found");
             schema = new String(in.readAllBytes());
         }
-        try (Connection c = conn(); Statement st = c.createStatement()) {
-            st.executeUpdate("PRAGMA journal_mode=WAL;");
-            st.executeUpdate("PRAGMA busy_timeout=5000;");
-            st.executeUpdate("PRAGMA synchronous=NORMAL;");
+        try (PooledConnection c = conn(); Statement st = c.raw().createStatement()) {
+            migrate(c.raw());
             for (String stmt : schema.split(";")) {
                 String s = stmt.trim();
                 if (!s.isEmpty()) st.executeUpdate(s + ";");
             }
+            if (statusCounters) {
+                enableStatusCounters(c.raw());
+            } else {
+                disableStatusCounters(c.raw());
+            }
+        }
+    }
+
+    // Trigger bodies contain ';', so they can't live in schema.sql, which is split on ';'
+    private static final String[] STATUS_COUNTER_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS trg_job_counts_insert AFTER INSERT ON jobs BEGIN "
+            + "INSERT INTO job_counts (state, count) VALUES (new.state, 1) "
+            + "ON CONFLICT(state) DO UPDATE SET count = count + 1; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_job_counts_delete AFTER DELETE ON jobs BEGIN "
+            + "UPDATE job_counts SET count = count - 1 WHERE state = old.state; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_job_counts_update AFTER UPDATE OF state ON jobs "
+            + "WHEN old.state IS NOT new.state BEGIN "
+            + "UPDATE job_counts SET count = count - 1 WHERE state = old.state; "
+            + "INSERT INTO job_counts (state, count) VALUES (new.state, 1) "
+            + "ON CONFLICT(state) DO UPDATE SET count = count + 1; END"
+    };
+
+    // job_counts is created, backfilled and wired up in one IMMEDIATE transaction so
+    // concurrent inits can't double-count
+    private void enableStatusCounters(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("BEGIN IMMEDIATE");
+            try {
+                boolean exists;
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'job_counts'")) {
+                    exists = rs.next();
+                }
+                if (!exists) {
+                    st.executeUpdate("CREATE TABLE job_counts (state TEXT PRIMARY KEY, count INTEGER NOT NULL)");
+                    st.executeUpdate("INSERT INTO job_counts (state, count) SELECT state, COUNT(*) FROM jobs GROUP BY state");
+                }
+                for (String trigger : STATUS_COUNTER_TRIGGERS) st.executeUpdate(trigger);
+                st.executeUpdate("COMMIT");
+            } catch (Exception e) {
+                st.executeUpdate("ROLLBACK");
+                throw e;
+            }
+        }
+    }
+
+    // Counters that stop being maintained would go stale, so drop them entirely
+    private void disableStatusCounters(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("DROP TRIGGER IF EXISTS trg_job_counts_insert");
+            st.executeUpdate("DROP TRIGGER IF EXISTS trg_job_counts_delete");
+            st.executeUpdate("DROP TRIGGER IF EXISTS trg_job_counts_update");
+            st.executeUpdate("DROP TABLE IF EXISTS job_counts");
+        }
+    }
+
+    // Columns added after the first release; CREATE TABLE IF NOT EXISTS won't add them to old databases
+    private void migrate(Connection c) throws SQLException {
+        addColumnIfMissing(c, "jobs", "worker_id", "TEXT");
+        addColumnIfMissing(c, "jobs", "output_path", "TEXT");
+        addColumnIfMissing(c, "jobs", "queue", "TEXT NOT NULL DEFAULT 'default'");
+        addColumnIfMissing(c, "jobs", "priority", "INTEGER NOT NULL DEFAULT 0");
+        if (addColumnIfMissing(c, "jobs", "lease_expires_at", "TEXT")) {
+            // Jobs stuck in flight from before leases existed count as expired, so the reaper recovers them
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("UPDATE jobs SET lease_expires_at = updated_at WHERE state IN ('RUNNING', 'PROCESSING')");
+            }
+        }
+        addColumnIfMissing(c, "jobs", "timeout_seconds", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(c, "jobs", "version", "INTEGER NOT NULL DEFAULT 0");
+        // What a retry from the DLQ restores; entries from older builds go back to the default queue
+        addColumnIfMissing(c, "dlq", "queue", "TEXT NOT NULL DEFAULT 'default'");
+        addColumnIfMissing(c, "dlq", "priority", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(c, "dlq", "timeout_seconds", "INTEGER NOT NULL DEFAULT 0");
+        // 3 is the budget retries of older entries always got
+        addColumnIfMissing(c, "dlq", "max_retries", "INTEGER NOT NULL DEFAULT 3");
+    }
+
+    // Returns true if the column was added
+    private boolean addColumnIfMissing(Connection c, String table, String column, String type) throws SQLException {
+        boolean tableExists = false;
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                tableExists = true;
+                if (column.equalsIgnoreCase(rs.getString("name"))) return false;
+            }
+        }
+        if (!tableExists) return false;
+        try (Statement st = c.createStatement()) {
+            st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
         }
+        return true;
     }
 
+    private static final String INSERT_JOB = "INSERT INTO jobs (id, command, state, attempts, max_retries, created_at, updated_at, next_run_at, last_error, output, queue, priority, timeout_seconds) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
     @Override
     public void save(Job job) throws Exception {
-        String sql = "INSERT INTO jobs (id, command, state, attempts, max_retries, created_at, updated_at, next_run_at, last_error, output) VALUES (?,?,?,?,?,?,?,?,?,?)";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, job.getId());
-            ps.setString(2, job.getCommand());
-            ps.setString(3, job.getState().name());
-            ps.setInt(4, job.getAttempts());
-            ps.setInt(5, job.getMaxRetries());
-            ps.setString(6, job.getCreatedAt().toString());
-            ps.setString(7, job.getUpdatedAt().toString());
-            ps.setString(8, job.getNextRunAt() == null ? null : job.getNextRunAt().toString());
-            ps.setString(9, job.getLastError());
-            ps.setString(10, job.getOutput());
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(INSERT_JOB);
+            bindJob(ps, job);
             ps.executeUpdate();
         }
     }
 
+    @Override
+    public void saveAll(List<Job> jobs) throws Exception {
+        if (jobs.isEmpty()) return;
+        try (PooledConnection pc = conn()) {
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                PreparedStatement ps = pc.prepare(INSERT_JOB);
+                for (Job job : jobs) {
+                    bindJob(ps, job);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void bindJob(PreparedStatement ps, Job job) throws SQLException {
+        ps.setString(1, job.getId());
+        ps.setString(2, job.getCommand());
+        ps.setString(3, job.getState().name());
+        ps.setInt(4, job.getAttempts());
+        ps.setInt(5, job.getMaxRetries());
+        ps.setString(6, ts(job.getCreatedAt()));
+        ps.setString(7, ts(job.getUpdatedAt()));
+        ps.setString(8, job.getNextRunAt() == null ? null : ts(job.getNextRunAt()));
+        ps.setString(9, job.getLastError());
+        ps.setString(10, job.getOutput());
+        ps.setString(11, job.getQueue());
+        ps.setInt(12, job.getPriority());
+        ps.setInt(13, job.getTimeoutSeconds());
+    }
+
     @Override
     public Optional<Job> findById(String id) throws Exception {
         String sql = "SELECT * FROM jobs WHERE id = ?";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setString(1, id);
-            var rs = ps.executeQuery();
-            if (!rs.next()) return Optional.empty();
-            return Optional.of(rowToJob(rs));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return Optional.empty();
+                return Optional.of(rowToJob(rs));
+            }
         }
     }
 
@@ -77,15 +236,41 @@ public class SQLiteStorage implements JobRepository {
     public List<Job> listByState(JobState state) throws Exception {
         String sql = "SELECT * FROM jobs WHERE state = ?";
         List<Job> out = new ArrayList<>();
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setString(1, state.name());
-            var rs = ps.executeQuery();
-            while (rs.next()) out.add(rowToJob(rs));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rowToJob(rs));
+            }
         }
         return out;
     }
     
+    @Override
+    public int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        // Seeks idx_jobs_state_id, so each page costs O(limit) however deep it is
+        String sql = "SELECT * FROM jobs WHERE state = ? AND id > ? ORDER BY id LIMIT ?";
+        int n = 0;
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, state.name());
+            ps.setString(2, afterId == null ? "" : afterId);
+            ps.setInt(3, limit > 0 ? limit : -1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rowToJob(rs));
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
     private Job rowToJob(ResultSet rs) throws SQLException {
+        return rowToJob(rs, false);
+    }
+
+    private Job rowToJob(ResultSet rs, boolean withOutput) throws SQLException {
         String id = rs.getString("id");
         String cmd = rs.getString("command");
         int maxRetries = rs.getInt("max_retries");
@@ -93,28 +278,66 @@ public class SQLiteStorage implements JobRepository {
         j.setAttempts(rs.getInt("attempts"));
         j.setState(JobState.valueOf(rs.getString("state")));
         // created/updated timestamps - naive parsing
+        try { j.setCreatedAt(Instant.parse(rs.getString("created_at"))); } catch (Exception ignored) {}
+        try {
+            String nextRunAt = rs.getString("next_run_at");
+            if (nextRunAt != null) j.setNextRunAt(Instant.parse(nextRunAt));
+        } catch (Exception ignored) {}
+        j.setLastError(rs.getString("last_error"));
+        j.setOutputPath(rs.getString("output_path"));
+        j.setQueue(rs.getString("queue"));
+        j.setPriority(rs.getInt("priority"));
+        j.setTimeoutSeconds(rs.getInt("timeout_seconds"));
+        if (withOutput) j.setOutput(rs.getString("output"));
+        j.setVersion(rs.getLong("version"));
+        j.setWorkerId(rs.getString("worker_id"));
         try { j.setUpdatedAt(Instant.parse(rs.getString("updated_at"))); } catch (Exception ignored) {}
-        try { /* leave createdAt from constructor */ } catch (Exception ignored) {}
         return j;
     }
 
+    @Override
+    public Map<JobState, Long> countByState() throws Exception {
+        // O(1) from the trigger-maintained summary, otherwise one GROUP BY over the state index
+        String sql = statusCounters
+                ? "SELECT state, count FROM job_counts"
+                : "SELECT state, COUNT(*) FROM jobs GROUP BY state";
+        Map<JobState, Long> out = new EnumMap<>(JobState.class);
+        for (JobState s : JobState.values()) out.put(s, 0L);
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        out.put(JobState.valueOf(rs.getString(1)), rs.getLong(2));
+                    } catch (IllegalArgumentException ignored) {
+                        // rows written by an older build with a state this one doesn't know
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
     @Override
     public void updateJobState(String id, JobState state) throws Exception {
-        String sql = "UPDATE jobs SET state = ?, updated_at = ? WHERE id = ?";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        String sql = "UPDATE jobs SET state = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setString(1, state.name());
-            ps.setString(2, Instant.now().toString());
+            ps.setString(2, ts(Instant.now()));
             ps.setString(3, id);
             ps.executeUpdate();
         }
+        if (!isInFlight(state)) releaseSlots(id);
     }
 
     @Override
     public void updateJobOutput(String id, String output) throws Exception {
-        String sql = "UPDATE jobs SET output = ?, updated_at = ? WHERE id = ?";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        String sql = "UPDATE jobs SET output = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setString(1, output);
-            ps.setString(2, Instant.now().toString());
+            ps.setString(2, ts(Instant.now()));
             ps.setString(3, id);
             ps.executeUpdate();
         }
@@ -123,23 +346,37 @@ public class SQLiteStorage implements JobRepository {
     @Override
     public JobState getJobState(String id) throws Exception {
         String sql = "SELECT state FROM jobs WHERE id = ?";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setString(1, id);
-            var rs = ps.executeQuery();
-            if (rs.next()) {
-                return JobState.valueOf(rs.getString("state"));
-            } else {
-                throw new RuntimeException("Job not found: " + id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return JobState.valueOf(rs.getString("state"));
+                } else {
+                    throw new RuntimeException("Job not found: " + id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long jobVersion(String id) throws Exception {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare("SELECT version FROM jobs WHERE id = ?");
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
             }
         }
     }
 
     @Override
     public void updateJobAttempts(String id, int attempts) throws Exception {
-        String sql = "UPDATE jobs SET attempts = ?, updated_at = ? WHERE id = ?";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        String sql = "UPDATE jobs SET attempts = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setInt(1, attempts);
-            ps.setString(2, Instant.now().toString());
+            ps.setString(2, ts(Instant.now()));
             ps.setString(3, id);
             ps.executeUpdate();
         }
@@ -147,125 +384,682 @@ public class SQLiteStorage implements JobRepository {
 
     @Override
     public Optional<Job> fetchNextPendingJob() throws Exception {
-        String selectSql = "SELECT * FROM jobs WHERE state = 'PENDING' ORDER BY created_at LIMIT 1";
-        String updateSql = "UPDATE jobs SET state = 'RUNNING', updated_at = ? WHERE id = ? AND state = 'PENDING'";
-        
-        int maxRetries = 3;
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try (Connection c = conn()) {
-                c.setAutoCommit(false);
-                
-                try (PreparedStatement selectPs = c.prepareStatement(selectSql)) {
-                    var rs = selectPs.executeQuery();
-                    if (!rs.next()) {
-                        c.rollback();
-                        return Optional.empty();
-                    }
-                    
-                    String jobId = rs.getString("id");
-                    
-                    try (PreparedStatement updatePs = c.prepareStatement(updateSql)) {
-                        updatePs.setString(1, Instant.now().toString());
-                        updatePs.setString(2, jobId);
-                        int updated = updatePs.executeUpdate();
-                        
-                        if (updated == 0) {
-                            // Another worker claimed it first
-                            c.rollback();
-                            return Optional.empty();
-                        }
-                        
-                        c.commit();
-                        return Optional.of(rowToJob(rs));
+        List<Job> claimed = claimBatch(null, 1);
+        return claimed.isEmpty() ? Optional.empty() : Optional.of(claimed.get(0));
+    }
+
+    // Loose index scan over idx_jobs_queue_claim: one seek per distinct queue, not one row per job
+    private static final String ACTIVE_QUEUES =
+            "WITH RECURSIVE q(name) AS ("
+            + "SELECT (SELECT MIN(queue) FROM jobs WHERE state = 'PENDING') "
+            + "UNION ALL "
+            + "SELECT (SELECT MIN(queue) FROM jobs WHERE state = 'PENDING' AND queue > q.name) FROM q WHERE q.name IS NOT NULL"
+            + ") SELECT name FROM q WHERE name IS NOT NULL";
+
+    // Single-statement claim: the UPDATE takes the write lock up front, so no
+    // SELECT-then-UPDATE race and no application-level retry loop is needed.
+    private static final String CLAIM_FROM_QUEUE =
+            "UPDATE jobs SET state = 'RUNNING', worker_id = ?, lease_expires_at = ?, updated_at = ?, version = version + 1 "
+            + "WHERE id IN (SELECT id FROM jobs WHERE state = 'PENDING' AND queue = ? "
+            + "AND (next_run_at IS NULL OR next_run_at <= ?)%s ORDER BY priority DESC, created_at LIMIT ?) "
+            + "AND state = 'PENDING' RETURNING *";
+
+    @Override
+    public List<Job> claimBatch(String workerId, int n) throws Exception {
+        n = Math.max(1, n);
+        String now = ts(Instant.now());
+        try (PooledConnection pc = conn()) {
+            List<String> active = new ArrayList<>();
+            try (ResultSet rs = pc.prepare(ACTIVE_QUEUES).executeQuery()) {
+                while (rs.next()) active.add(rs.getString(1));
+            }
+            if (active.isEmpty()) return new ArrayList<>();
+            if (!throttle.isEmpty()) return claimThrottled(pc, active, n, workerId, now);
+            if (active.size() == 1) return claimFromQueue(pc, active.get(0), n, workerId, now, List.of());
+
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                List<Job> out = queueScheduler.claimAcross(active, n, null,
+                        (q, k, skip) -> claimFromQueue(pc, q, k, workerId, now, skip));
+                c.commit();
+                return out;
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    private List<Job> claimFromQueue(PooledConnection pc, String queue, int n, String workerId, String now,
+                                     List<Throttle.Rule> skipPrefixes) throws SQLException {
+        StringBuilder skip = new StringBuilder();
+        for (int i = 0; i < skipPrefixes.size(); i++) skip.append(" AND substr(command, 1, ?) <> ?");
+        List<Job> out = new ArrayList<>();
+        PreparedStatement ps = pc.prepare(String.format(CLAIM_FROM_QUEUE, skip));
+        int i = 1;
+        ps.setString(i++, workerId);
+        ps.setString(i++, ts(Instant.now().plusSeconds(leaseSeconds)));
+        ps.setString(i++, now);
+        ps.setString(i++, queue);
+        ps.setString(i++, now);
+        for (Throttle.Rule r : skipPrefixes) {
+            ps.setInt(i++, r.match.length());
+            ps.setString(i++, r.match);
+        }
+        ps.setInt(i, n);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rowToJob(rs));
+        }
+        // RETURNING gives no ordering guarantee
+        out.sort(CLAIM_ORDER);
+        return out;
+    }
+
+    private List<Job> claimThrottled(PooledConnection pc, List<String> active, int n, String workerId, String now)
+            throws SQLException {
+        long nowMicros = throttle.nowMicros();
+        ClaimBudget budget = new ClaimBudget(throttle);
+        // Lock-free local reservation first: a process that is already at its limit never touches the shared rows
+        for (Throttle.Rule r : throttle.rules()) {
+            if (r.byQueue && !active.contains(r.match)) continue;
+            budget.reserve(r, r.reserve(n, nowMicros));
+        }
+
+        Map<Throttle.Rule, Long> sharedTat = new HashMap<>();
+        List<Job> out;
+        try (Statement st = pc.raw().createStatement()) {
+            // IMMEDIATE takes the write lock before the shared counts are read, so no other process can
+            // claim against the same limits between our read and our write
+            st.execute(throttle.global ? "BEGIN IMMEDIATE" : "BEGIN");
+            try {
+                if (throttle.global) {
+                    for (Throttle.Rule r : budget.rules()) {
+                        if (budget.allowance(r) > 0) budget.limit(r, sharedAllowance(pc, r, nowMicros, budget.allowance(r), sharedTat));
                     }
-                } catch (SQLException e) {
-                    c.rollback();
-                    if (e.getMessage().contains("locked") && attempt < maxRetries - 1) {
-                        Thread.sleep(100 * (attempt + 1));
+                }
+                out = queueScheduler.claimAcross(active, n, budget,
+                        (q, k, skip) -> claimFromQueue(pc, q, k, workerId, now, skip));
+                if (!budget.rejected.isEmpty()) putBack(pc, budget.rejected, now);
+                for (Map.Entry<Throttle.Rule, Long> e : sharedTat.entrySet()) {
+                    int used = budget.used(e.getKey());
+                    if (used == 0) continue;
+                    PreparedStatement ps = pc.prepare(UPSERT_BUCKET);
+                    ps.setString(1, e.getKey().key);
+                    ps.setLong(2, e.getKey().spend(e.getValue(), nowMicros, used));
+                    ps.executeUpdate();
+                }
+                st.execute("COMMIT");
+            } catch (Exception e) {
+                // Any failure, not just SQL ones: autocommit is still on after a manual BEGIN, so the
+                // pool would hand this connection on with the write lock held
+                st.execute("ROLLBACK");
+                throw e;
+            }
+        } catch (Exception e) {
+            // Nothing was claimed, so every local reservation goes back
+            for (Throttle.Rule r : budget.rules()) r.unreserve(budget.used(r) + budget.unused(r));
+            throw e;
+        }
+        for (Throttle.Rule r : budget.rules()) r.unreserve(budget.unused(r));
+        heldSlots.putAll(budget.held);
+        return out;
+    }
+
+    private static final String UPSERT_BUCKET =
+            "INSERT INTO throttle_buckets (rule, tat_us) VALUES (?, ?) ON CONFLICT(rule) DO UPDATE SET tat_us = excluded.tat_us";
+
+    // The claimed rows themselves are the cross-process leases: in-flight = RUNNING + PROCESSING rows
+    private int sharedAllowance(PooledConnection pc, Throttle.Rule r, long nowMicros, int wanted,
+                                Map<Throttle.Rule, Long> sharedTat) throws SQLException {
+        int allowed = wanted;
+        if (r.capped()) {
+            PreparedStatement ps;
+            if (r.byQueue) {
+                ps = pc.prepare("SELECT COUNT(*) FROM jobs WHERE state IN ('RUNNING', 'PROCESSING') AND queue = ?");
+                ps.setString(1, r.match);
+            } else {
+                ps = pc.prepare("SELECT COUNT(*) FROM jobs WHERE state IN ('RUNNING', 'PROCESSING') AND substr(command, 1, ?) = ?");
+                ps.setInt(1, r.match.length());
+                ps.setString(2, r.match);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                int inFlight = rs.next() ? rs.getInt(1) : 0;
+                allowed = Math.min(allowed, Math.max(0, r.maxInFlight - inFlight));
+            }
+        }
+        if (r.rateLimited() && allowed > 0) {
+            PreparedStatement ps = pc.prepare("SELECT tat_us FROM throttle_buckets WHERE rule = ?");
+            ps.setString(1, r.key);
+            long tat;
+            try (ResultSet rs = ps.executeQuery()) {
+                tat = rs.next() ? rs.getLong(1) : 0;
+            }
+            sharedTat.put(r, tat);
+            allowed = r.tokens(tat, nowMicros, allowed);
+        }
+        return allowed;
+    }
+
+    private void putBack(PooledConnection pc, Collection<String> jobIds, String now) throws SQLException {
+        PreparedStatement ps = pc.prepare(RELEASE_JOB);
+        for (String id : jobIds) {
+            ps.setString(1, now);
+            ps.setString(2, id);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+    }
+
+    // Frees the local in-flight slots a job took when it was claimed
+    private void releaseSlots(String jobId) {
+        if (heldSlots.isEmpty()) return;
+        List<Throttle.Rule> rules = heldSlots.remove(jobId);
+        if (rules != null) {
+            for (Throttle.Rule r : rules) r.release(1);
+        }
+    }
+
+    private static final Comparator<Job> CLAIM_ORDER =
+            Comparator.comparingInt(Job::getPriority).reversed().thenComparing(Job::getCreatedAt);
+
+    @Override
+    public void releaseJobs(Collection<String> jobIds) throws Exception {
+        if (jobIds.isEmpty()) return;
+        try (PooledConnection pc = conn()) {
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                putBack(pc, jobIds, ts(Instant.now()));
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+        for (String id : jobIds) releaseSlots(id);
+    }
+
+    @Override
+    public int renewLeases(String workerId) throws Exception {
+        // One statement for every job the owner holds, however many that is
+        String sql = "UPDATE jobs SET lease_expires_at = ? WHERE worker_id = ? AND state IN ('RUNNING', 'PROCESSING')";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, ts(Instant.now().plusSeconds(leaseSeconds)));
+            ps.setString(2, workerId);
+            return ps.executeUpdate();
+        }
+    }
+
+    // Heartbeat and reaper both seek idx_jobs_state_id to the in-flight rows, so neither scans the job history
+    private static final String EXPIRED = "state IN ('RUNNING', 'PROCESSING') AND lease_expires_at < ?";
+    private static final String LEASE_LOST = "'Lease expired: worker ' || COALESCE(worker_id, '?') || ' stopped responding'";
+
+    @Override
+    public int reapExpiredLeases() throws Exception {
+        String now = ts(Instant.now());
+        try (PooledConnection pc = conn()) {
+            // Cheap read first, so a healthy system never takes the write lock here
+            PreparedStatement probe = pc.prepare("SELECT 1 FROM jobs WHERE " + EXPIRED + " LIMIT 1");
+            probe.setString(1, now);
+            try (ResultSet rs = probe.executeQuery()) {
+                if (!rs.next()) return 0;
+            }
+            try (Statement st = pc.raw().createStatement()) {
+                st.execute("BEGIN IMMEDIATE");
+                try {
+                    // A job that was running when its worker died counts as a failed attempt, so a job
+                    // that keeps killing its worker ends up in the DLQ instead of looping forever.
+                    // RUNNING jobs never started and go back untouched.
+                    String poisoned = EXPIRED + " AND state = 'PROCESSING' AND attempts + 1 > max_retries";
+                    PreparedStatement dlq = pc.prepare("INSERT OR REPLACE INTO dlq (" + DLQ_COLUMNS + ") "
+                            + "SELECT id, command, " + LEASE_LOST + ", ?, " + DLQ_JOB_FIELDS + " FROM jobs WHERE " + poisoned);
+                    dlq.setString(1, now);
+                    dlq.setString(2, now);
+                    int reaped = dlq.executeUpdate();
+                    PreparedStatement delete = pc.prepare("DELETE FROM jobs WHERE " + poisoned);
+                    delete.setString(1, now);
+                    delete.executeUpdate();
+
+                    PreparedStatement requeue = pc.prepare("UPDATE jobs SET state = 'PENDING', "
+                            + "attempts = attempts + CASE WHEN state = 'PROCESSING' THEN 1 ELSE 0 END, "
+                            + "last_error = CASE WHEN state = 'PROCESSING' THEN " + LEASE_LOST + " ELSE last_error END, "
+                            + "worker_id = NULL, lease_expires_at = NULL, updated_at = ?, version = version + 1 WHERE " + EXPIRED);
+                    requeue.setString(1, now);
+                    requeue.setString(2, now);
+                    reaped += requeue.executeUpdate();
+                    st.execute("COMMIT");
+                    return reaped;
+                } catch (Exception e) {
+                    st.execute("ROLLBACK");
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static final String RELEASE_JOB =
+            "UPDATE jobs SET state = 'PENDING', worker_id = NULL, updated_at = ?, version = version + 1 WHERE id = ? AND state = 'RUNNING'";
+
+    @Override
+    public void scheduleRetry(String jobId, int attempts, Instant nextRunAt) throws Exception {
+        String sql = "UPDATE jobs SET state = 'PENDING', attempts = ?, next_run_at = ?, worker_id = NULL, updated_at = ?, version = version + 1 WHERE id = ?";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setInt(1, attempts);
+            ps.setString(2, ts(nextRunAt));
+            ps.setString(3, ts(Instant.now()));
+            ps.setString(4, jobId);
+            ps.executeUpdate();
+        }
+        releaseSlots(jobId);
+    }
+
+    @Override
+    public Optional<Instant> nextScheduledRunAt() throws Exception {
+        String sql = "SELECT MIN(next_run_at) FROM jobs WHERE state = 'PENDING' AND next_run_at > ?";
+        Optional<Instant> next;
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, ts(Instant.now()));
+            try (ResultSet rs = ps.executeQuery()) {
+                next = !rs.next() || rs.getString(1) == null
+                        ? Optional.empty()
+                        : Optional.of(Instant.parse(rs.getString(1)));
+            }
+        }
+        // A drained rate limit is a scheduled wake-up too: idle claimers shouldn't sleep past its refill
+        long refill = throttle.isEmpty() ? 0 : throttle.nextTokenMicros(throttle.nowMicros());
+        if (refill > 0) {
+            Instant at = Instant.EPOCH.plus(refill, ChronoUnit.MICROS);
+            if (next.isEmpty() || at.isBefore(next.get())) next = Optional.of(at);
+        }
+        return next;
+    }
+
+    private static boolean isInFlight(JobState state) {
+        return state == JobState.RUNNING || state == JobState.PROCESSING;
+    }
+
+    @Override
+    public void applyTransitions(List<JobTransition> transitions) throws Exception {
+        if (transitions.isEmpty()) return;
+        String updateSql = "UPDATE jobs SET state = COALESCE(?, state), attempts = COALESCE(?, attempts), "
+                + "next_run_at = COALESCE(?, next_run_at), output = COALESCE(?, output), "
+                + "output_path = CASE WHEN ? IS NOT NULL THEN ? ELSE output_path END, "
+                + "last_error = COALESCE(?, last_error), "
+                + "worker_id = CASE WHEN ? = 'PENDING' THEN NULL ELSE worker_id END, updated_at = ?, version = version + 1 WHERE id = ?";
+        // The job's own row supplies what a DLQ retry restores
+        String dlqSql = "INSERT OR REPLACE INTO dlq (" + DLQ_COLUMNS + ") "
+                + "SELECT id, COALESCE(?, command), ?, ?, " + DLQ_JOB_FIELDS + " FROM jobs WHERE id = ?";
+        String deleteSql = "DELETE FROM jobs WHERE id = ?";
+
+        try (PooledConnection pc = conn()) {
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                PreparedStatement update = pc.prepare(updateSql);
+                PreparedStatement dlq = pc.prepare(dlqSql);
+                PreparedStatement delete = pc.prepare(deleteSql);
+                String now = ts(Instant.now());
+                boolean anyUpdate = false;
+                boolean anyDead = false;
+
+                for (JobTransition t : transitions) {
+                    if (t.getState() == JobState.DEAD) {
+                        dlq.setString(1, t.getCommand());
+                        dlq.setString(2, t.getLastError() != null ? t.getLastError() : "Exceeded max retries");
+                        dlq.setString(3, now);
+                        dlq.setString(4, t.getJobId());
+                        dlq.addBatch();
+                        delete.setString(1, t.getJobId());
+                        delete.addBatch();
+                        anyDead = true;
                         continue;
                     }
-                    throw e;
+                    String state = t.getState() == null ? null : t.getState().name();
+                    update.setString(1, state);
+                    if (t.getAttempts() == null) update.setNull(2, Types.INTEGER); else update.setInt(2, t.getAttempts());
+                    update.setString(3, t.getNextRunAt() == null ? null : ts(t.getNextRunAt()));
+                    update.setString(4, t.getOutput());
+                    // A new run replaces the old log pointer, even with null when the new output fit in the row
+                    String outputPath = t.getOutputPath();
+                    update.setString(5, t.getOutput() != null ? "" : null);
+                    update.setString(6, outputPath);
+                    update.setString(7, t.getLastError());
+                    update.setString(8, state);
+                    update.setString(9, now);
+                    update.setString(10, t.getJobId());
+                    update.addBatch();
+                    anyUpdate = true;
                 }
+
+                if (anyUpdate) update.executeBatch();
+                if (anyDead) {
+                    dlq.executeBatch();
+                    delete.executeBatch();
+                }
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
             }
         }
-        return Optional.empty();
+        for (JobTransition t : transitions) {
+            if (t.getState() != null && !isInFlight(t.getState())) releaseSlots(t.getJobId());
+        }
     }
 
     @Override
     public void moveToDLQ(Job job) throws Exception {
         String reason = job.getLastError() != null ? job.getLastError() : "Exceeded max retries";
 
-        try (Connection c = conn();
-            PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO dlq (id, command, reason, failed_at) VALUES (?, ?, ?, ?)")) {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(
+                "INSERT INTO dlq (" + DLQ_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
             ps.setString(1, job.getId());
             ps.setString(2, job.getCommand());
             ps.setString(3, reason);
-            ps.setString(4, Instant.now().toString());
+            ps.setString(4, ts(Instant.now()));
+            ps.setString(5, job.getQueue());
+            ps.setInt(6, job.getPriority());
+            ps.setInt(7, job.getTimeoutSeconds());
+            ps.setInt(8, job.getMaxRetries());
             ps.executeUpdate();
-        }
 
-        // Remove from main jobs table
-        try (Connection c = conn();
-            PreparedStatement ps = c.prepareStatement("DELETE FROM jobs WHERE id = ?")) {
+            // Remove from main jobs table
+            ps = c.prepare("DELETE FROM jobs WHERE id = ?");
             ps.setString(1, job.getId());
             ps.executeUpdate();
         }
+        releaseSlots(job.getId());
+    }
+
+    @Override
+    public List<Job> findOldest(JobState state, Instant createdBefore, int limit) throws Exception {
+        // Rides idx_jobs_state_created, so finding the oldest rows never scans the rest of the history
+        String sql = "SELECT * FROM jobs WHERE state = ? AND created_at < ? ORDER BY created_at LIMIT ?";
+        List<Job> out = new ArrayList<>();
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, state.name());
+            ps.setString(2, createdBefore == null ? "9999" : ts(createdBefore));
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rowToJob(rs, true));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public int deleteJobs(JobState state, Collection<String> jobIds) throws Exception {
+        if (jobIds.isEmpty()) return 0;
+        // The state guard skips anything that moved on since it was selected
+        String sql = "DELETE FROM jobs WHERE id = ? AND state = ?";
+        try (PooledConnection pc = conn()) {
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                PreparedStatement ps = pc.prepare(sql);
+                for (String id : jobIds) {
+                    ps.setString(1, id);
+                    ps.setString(2, state.name());
+                    ps.addBatch();
+                }
+                int deleted = 0;
+                for (int n : ps.executeBatch()) deleted += Math.max(n, 0);
+                c.commit();
+                return deleted;
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) throws Exception {
+        try (PooledConnection pc = conn(); Statement st = pc.raw().createStatement()) {
+            try (ResultSet rs = st.executeQuery("PRAGMA auto_vacuum")) {
+                if (!rs.next() || rs.getInt(1) != 2) return 0; // file predates INCREMENTAL; free pages are only reused
+            }
+            long before = freelistCount(st);
+            if (before == 0) return 0;
+            // The pragma frees one page per sqlite3_step and the driver steps it once per execute,
+            // so the step is repeated inside a single transaction. The statement is left mid-step
+            // and must be closed before the commit.
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                try (Statement vacuum = c.createStatement()) {
+                    for (long i = Math.min(Math.max(1, pages), before); i > 0; i--) {
+                        vacuum.execute("PRAGMA incremental_vacuum");
+                    }
+                }
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+            return (int) (before - freelistCount(st));
+        }
+    }
+
+    private static long freelistCount(Statement st) throws SQLException {
+        try (ResultSet rs = st.executeQuery("PRAGMA freelist_count")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        try (PooledConnection c = conn(); Statement st = c.raw().createStatement()) {
+            // TRUNCATE also shrinks the -wal file; it gives up quietly if readers are still active
+            try (ResultSet rs = st.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+                rs.next();
+            }
+        }
     }
 
     @Override
     public void deleteJobById(String jobId) throws Exception {
         String sql = "DELETE FROM jobs WHERE id = ?";
-        try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
             ps.setString(1, jobId);
             ps.executeUpdate();
         }
+        releaseSlots(jobId);
     }
 
+    // The job fields a retry from the DLQ restores, named the same in jobs and dlq
+    private static final String DLQ_JOB_FIELDS = "queue, priority, timeout_seconds, max_retries";
+    private static final String DLQ_COLUMNS = "id, command, reason, failed_at, " + DLQ_JOB_FIELDS;
+
+    private static Job rowToDead(ResultSet rs) throws SQLException {
+        Job job = new Job(rs.getString("id"), rs.getString("command"), rs.getInt("max_retries"));
+        job.setState(JobState.DEAD);
+        job.setQueue(rs.getString("queue"));
+        job.setPriority(rs.getInt("priority"));
+        job.setTimeoutSeconds(rs.getInt("timeout_seconds"));
+        return job;
+    }
 
     @Override
-public List<Job> listDLQ() throws Exception {
-    String sql = "SELECT id, command FROM dlq ORDER BY failed_at DESC";
-    List<Job> out = new ArrayList<>();
-    try (Connection c = conn(); 
-         PreparedStatement ps = c.prepareStatement(sql)) {
-        var rs = ps.executeQuery();
-        while (rs.next()) {
-            String id = rs.getString("id");
-            String command = rs.getString("command");
-            Job job = new Job(id, command, 0);
-            job.setState(JobState.DEAD);
-            out.add(job);
+    public List<Job> listDLQ() throws Exception {
+        String sql = "SELECT " + DLQ_COLUMNS + " FROM dlq ORDER BY failed_at DESC";
+        List<Job> out = new ArrayList<>();
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rowToDead(rs));
+            }
         }
+        return out;
     }
-    return out;
-}
 
-@Override
-public Optional<Job> findInDLQ(String id) throws Exception {
-    String sql = "SELECT id, command FROM dlq WHERE id = ?";
-    try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
-        ps.setString(1, id);
-        var rs = ps.executeQuery();
-        if (!rs.next()) return Optional.empty();
-        
-        String jobId = rs.getString("id");
-        String command = rs.getString("command");
-        Job job = new Job(jobId, command, 3); // Default max_retries
-        job.setState(JobState.DEAD);
-        return Optional.of(job);
+    @Override
+    public int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        String sql = "SELECT " + DLQ_COLUMNS + " FROM dlq WHERE id > ? ORDER BY id LIMIT ?";
+        int n = 0;
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, afterId == null ? "" : afterId);
+            ps.setInt(2, limit > 0 ? limit : -1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rowToDead(rs));
+                    n++;
+                }
+            }
+        }
+        return n;
     }
-}
 
     @Override
-public void deleteFromDLQ(String jobId) throws Exception {
-    String sql = "DELETE FROM dlq WHERE id = ?";
-    try (Connection c = conn(); PreparedStatement ps = c.prepareStatement(sql)) {
-        ps.setString(1, jobId);
-        ps.executeUpdate();
+    public List<Job> findOldestInDLQ(Instant failedBefore, int limit) throws Exception {
+        String sql = "SELECT " + DLQ_COLUMNS + " FROM dlq WHERE failed_at < ? ORDER BY failed_at LIMIT ?";
+        List<Job> out = new ArrayList<>();
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, failedBefore == null ? "9999" : ts(failedBefore));
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Job job = rowToDead(rs);
+                    job.setLastError(rs.getString("reason"));
+                    try { job.setUpdatedAt(Instant.parse(rs.getString("failed_at"))); } catch (Exception ignored) {}
+                    out.add(job);
+                }
+            }
+        }
+        return out;
     }
-}
-    
 
+    @Override
+    public long countDLQ() throws Exception {
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare("SELECT COUNT(*) FROM dlq");
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
 
+    @Override
+    public Optional<Job> findInDLQ(String id) throws Exception {
+        String sql = "SELECT " + DLQ_COLUMNS + " FROM dlq WHERE id = ?";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return Optional.empty();
+                return Optional.of(rowToDead(rs));
+            }
+        }
+    }
+
+    @Override
+    public int deleteFromDLQ(Collection<String> jobIds) throws Exception {
+        if (jobIds.isEmpty()) return 0;
+        try (PooledConnection pc = conn()) {
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                PreparedStatement ps = pc.prepare("DELETE FROM dlq WHERE id = ?");
+                for (String id : jobIds) {
+                    ps.setString(1, id);
+                    ps.addBatch();
+                }
+                int deleted = 0;
+                for (int n : ps.executeBatch()) deleted += Math.max(n, 0);
+                c.commit();
+                return deleted;
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public void deleteFromDLQ(String jobId) throws Exception {
+        String sql = "DELETE FROM dlq WHERE id = ?";
+        try (PooledConnection c = conn()) {
+            PreparedStatement ps = c.prepare(sql);
+            ps.setString(1, jobId);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public Optional<Job> retryFromDLQ(String id) throws Exception {
+        try (PooledConnection pc = conn()) {
+            Connection c = pc.raw();
+            c.setAutoCommit(false);
+            try {
+                // DELETE ... RETURNING takes the write lock before reading, so two retries of one entry can't both succeed
+                PreparedStatement take = pc.prepare("DELETE FROM dlq WHERE id = ? RETURNING " + DLQ_COLUMNS);
+                take.setString(1, id);
+                Job job;
+                try (ResultSet rs = take.executeQuery()) {
+                    if (!rs.next()) {
+                        c.rollback();
+                        return Optional.empty();
+                    }
+                    job = rowToDead(rs);
+                }
+                job.setState(JobState.PENDING);
+                PreparedStatement insert = pc.prepare(INSERT_JOB);
+                bindJob(insert, job);
+                insert.executeUpdate();
+                c.commit();
+                return Optional.of(job);
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    // data_version is per connection, so it has to be read from one dedicated connection
+    @Override
+    public synchronized long dataVersion() throws Exception {
+        if (watchConnection == null || watchConnection.isClosed()) {
+            watchConnection = DriverManager.getConnection(dbUrl);
+            watchStatement = watchConnection.prepareStatement("PRAGMA data_version");
+        }
+        // Polled by idle workers and on every job cache read, so the statement is kept prepared
+        try (ResultSet rs = watchStatement.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        synchronized (this) {
+            if (watchConnection != null) {
+                try { watchConnection.close(); } catch (SQLException ignored) {}
+                watchConnection = null;
+                watchStatement = null;
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,378 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@code shard_count > 1}: jobs spread over that many SQLite files by a hash of their id, so
+ * writers only contend on the shard they touch instead of on one database lock. Each shard
+ * is a full {@link SQLiteStorage} with its own connection pool.
+ *
+ * <p>Anything addressed by job id goes to that job's shard. Claims start at the next shard in
+ * turn and take from the following ones until the batch is full, so idle shards never leave
+ * workers waiting while another has work. Listings merge the shards' pages back into id
+ * order; counts are summed. Priorities and queue weights hold within each shard.
+ */
+public class ShardedSQLiteStorage implements JobRepository {
+
+    private static final int MERGE_PAGE = 500;
+
+    private final int count;
+    private final String[] paths;
+    private final SQLiteStorage[] shards;
+    private final AtomicInteger nextClaim = new AtomicInteger();
+
+    public ShardedSQLiteStorage(int count) {
+        ConfigManager cfg = ConfigManager.getInstance();
+        String base = cfg.get("database_path", "queuectl.db");
+        // One Throttle for all shards, so a limit isn't granted once per shard. Its state lives in
+        // the process; the shared bucket rows of throttle_scope=global would be split across files.
+        Throttle throttle = new Throttle(cfg.get("queue_limits", ""), cfg.get("command_limits", ""), false);
+        this.count = count;
+        this.paths = new String[count];
+        this.shards = new SQLiteStorage[count];
+        for (int i = 0; i < count; i++) {
+            paths[i] = shardPath(base, i);
+            shards[i] = new SQLiteStorage(paths[i], throttle);
+        }
+    }
+
+    // queuectl.db -> queuectl-0.db, queuectl-1.db, ...
+    static String shardPath(String base, int i) {
+        return base.endsWith(".db") ? base.substring(0, base.length() - 3) + "-" + i + ".db" : base + "-" + i;
+    }
+
+    @Override
+    public void init() throws Exception {
+        // Ids are hashed over the shard count, so the count can't change under existing jobs
+        String extra = shardPath(ConfigManager.getInstance().get("database_path", "queuectl.db"), count);
+        if (Files.exists(Path.of(extra))) {
+            throw new IllegalStateException("Found " + extra + ", but shard_count is " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            shards[i].init();
+            checkShardInfo(i);
+        }
+    }
+
+    private void checkShardInfo(int i) throws Exception {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + paths[i]);
+             Statement st = c.createStatement()) {
+            st.executeUpdate("PRAGMA busy_timeout=5000");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS shard_info (shard INTEGER NOT NULL, shard_count INTEGER NOT NULL)");
+            try (ResultSet rs = st.executeQuery("SELECT shard, shard_count FROM shard_info")) {
+                if (rs.next()) {
+                    if (rs.getInt(1) != i || rs.getInt(2) != count) {
+                        throw new IllegalStateException(paths[i] + " was created as shard " + rs.getInt(1)
+                                + " of " + rs.getInt(2) + ", but shard_count is " + count);
+                    }
+                    return;
+                }
+            }
+            st.executeUpdate("INSERT INTO shard_info (shard, shard_count) VALUES (" + i + ", " + count + ")");
+        }
+    }
+
+    private SQLiteStorage shardOf(String jobId) {
+        return shards[Math.floorMod(jobId.hashCode(), count)];
+    }
+
+    private <T> List<List<T>> split(Collection<T> items, Function<T, String> id) {
+        List<List<T>> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(new ArrayList<>());
+        for (T item : items) out.get(Math.floorMod(id.apply(item).hashCode(), count)).add(item);
+        return out;
+    }
+
+    @Override
+    public void save(Job job) throws Exception {
+        shardOf(job.getId()).save(job);
+    }
+
+    // One transaction per shard; a failure part way leaves the earlier shards' jobs saved
+    @Override
+    public void saveAll(List<Job> jobs) throws Exception {
+        List<List<Job>> parts = split(jobs, Job::getId);
+        for (int i = 0; i < count; i++) shards[i].saveAll(parts.get(i));
+    }
+
+    @Override
+    public Optional<Job> findById(String id) throws Exception {
+        return shardOf(id).findById(id);
+    }
+
+    @Override
+    public List<Job> listByState(JobState state) throws Exception {
+        List<Job> out = new ArrayList<>();
+        for (SQLiteStorage s : shards) out.addAll(s.listByState(state));
+        return out;
+    }
+
+    @Override
+    public int forEachByState(JobState state, String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        return mergeById(afterId, limit, consumer, (s, after, n, c) -> s.forEachByState(state, after, n, c));
+    }
+
+    @Override
+    public Map<JobState, Long> countByState() throws Exception {
+        Map<JobState, Long> out = new EnumMap<>(JobState.class);
+        for (SQLiteStorage s : shards) {
+            for (Map.Entry<JobState, Long> e : s.countByState().entrySet()) out.merge(e.getKey(), e.getValue(), Long::sum);
+        }
+        return out;
+    }
+
+    @Override
+    public void updateJobState(String jobId, JobState state) throws Exception {
+        shardOf(jobId).updateJobState(jobId, state);
+    }
+
+    @Override
+    public void updateJobOutput(String jobId, String output) throws Exception {
+        shardOf(jobId).updateJobOutput(jobId, output);
+    }
+
+    @Override
+    public JobState getJobState(String jobId) throws Exception {
+        return shardOf(jobId).getJobState(jobId);
+    }
+
+    @Override
+    public long jobVersion(String jobId) throws Exception {
+        return shardOf(jobId).jobVersion(jobId);
+    }
+
+    @Override
+    public void updateJobAttempts(String jobId, int attempts) throws Exception {
+        shardOf(jobId).updateJobAttempts(jobId, attempts);
+    }
+
+    @Override
+    public void moveToDLQ(Job job) throws Exception {
+        shardOf(job.getId()).moveToDLQ(job);
+    }
+
+    @Override
+    public Optional<Job> fetchNextPendingJob() throws Exception {
+        List<Job> claimed = claimBatch(null, 1);
+        return claimed.isEmpty() ? Optional.empty() : Optional.of(claimed.get(0));
+    }
+
+    // Rotating start spreads concurrent claimers over different shards; the rest of the loop steals from the others
+    @Override
+    public List<Job> claimBatch(String workerId, int n) throws Exception {
+        n = Math.max(1, n);
+        int start = Math.floorMod(nextClaim.getAndIncrement(), count);
+        List<Job> out = new ArrayList<>(n);
+        for (int i = 0; i < count && out.size() < n; i++) {
+            out.addAll(shards[(start + i) % count].claimBatch(workerId, n - out.size()));
+        }
+        return out;
+    }
+
+    @Override
+    public void releaseJobs(Collection<String> jobIds) throws Exception {
+        List<List<String>> parts = split(jobIds, id -> id);
+        for (int i = 0; i < count; i++) shards[i].releaseJobs(parts.get(i));
+    }
+
+    @Override
+    public int renewLeases(String workerId) throws Exception {
+        int renewed = 0;
+        for (SQLiteStorage s : shards) renewed += s.renewLeases(workerId);
+        return renewed;
+    }
+
+    @Override
+    public int reapExpiredLeases() throws Exception {
+        int reaped = 0;
+        for (SQLiteStorage s : shards) reaped += s.reapExpiredLeases();
+        return reaped;
+    }
+
+    @Override
+    public void scheduleRetry(String jobId, int attempts, Instant nextRunAt) throws Exception {
+        shardOf(jobId).scheduleRetry(jobId, attempts, nextRunAt);
+    }
+
+    @Override
+    public Optional<Instant> nextScheduledRunAt() throws Exception {
+        Optional<Instant> next = Optional.empty();
+        for (SQLiteStorage s : shards) {
+            Optional<Instant> at = s.nextScheduledRunAt();
+            if (at.isPresent() && (next.isEmpty() || at.get().isBefore(next.get()))) next = at;
+        }
+        return next;
+    }
+
+    // Atomic per shard only; a failure can leave other shards' transitions applied
+    @Override
+    public void applyTransitions(List<JobTransition> transitions) throws Exception {
+        List<List<JobTransition>> parts = split(transitions, JobTransition::getJobId);
+        for (int i = 0; i < count; i++) shards[i].applyTransitions(parts.get(i));
+    }
+
+    @Override
+    public void deleteJobById(String jobId) throws Exception {
+        shardOf(jobId).deleteJobById(jobId);
+    }
+
+    @Override
+    public List<Job> findOldest(JobState state, Instant createdBefore, int limit) throws Exception {
+        List<Job> out = new ArrayList<>();
+        for (SQLiteStorage s : shards) out.addAll(s.findOldest(state, createdBefore, limit));
+        out.sort(Comparator.comparing(Job::getCreatedAt));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    @Override
+    public int deleteJobs(JobState state, Collection<String> jobIds) throws Exception {
+        List<List<String>> parts = split(jobIds, id -> id);
+        int deleted = 0;
+        for (int i = 0; i < count; i++) deleted += shards[i].deleteJobs(state, parts.get(i));
+        return deleted;
+    }
+
+    @Override
+    public List<Job> listDLQ() throws Exception {
+        List<Job> out = new ArrayList<>();
+        for (SQLiteStorage s : shards) out.addAll(s.listDLQ());
+        return out;
+    }
+
+    @Override
+    public int forEachInDLQ(String afterId, int limit, Consumer<Job> consumer) throws Exception {
+        return mergeById(afterId, limit, consumer, SQLiteStorage::forEachInDLQ);
+    }
+
+    @Override
+    public Optional<Job> findInDLQ(String id) throws Exception {
+        return shardOf(id).findInDLQ(id);
+    }
+
+    @Override
+    public void deleteFromDLQ(String jobId) throws Exception {
+        shardOf(jobId).deleteFromDLQ(jobId);
+    }
+
+    @Override
+    public Optional<Job> retryFromDLQ(String id) throws Exception {
+        return shardOf(id).retryFromDLQ(id);
+    }
+
+    @Override
+    public List<Job> findOldestInDLQ(Instant failedBefore, int limit) throws Exception {
+        List<Job> out = new ArrayList<>();
+        for (SQLiteStorage s : shards) out.addAll(s.findOldestInDLQ(failedBefore, limit));
+        // findOldestInDLQ carries failed_at as updatedAt
+        out.sort(Comparator.comparing(Job::getUpdatedAt));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    @Override
+    public long countDLQ() throws Exception {
+        long n = 0;
+        for (SQLiteStorage s : shards) n += s.countDLQ();
+        return n;
+    }
+
+    @Override
+    public int deleteFromDLQ(Collection<String> jobIds) throws Exception {
+        List<List<String>> parts = split(jobIds, id -> id);
+        int deleted = 0;
+        for (int i = 0; i < count; i++) deleted += shards[i].deleteFromDLQ(parts.get(i));
+        return deleted;
+    }
+
+    @Override
+    public int incrementalVacuum(int pages) throws Exception {
+        int freed = 0;
+        for (SQLiteStorage s : shards) freed += s.incrementalVacuum(pages);
+        return freed;
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        for (SQLiteStorage s : shards) s.checkpoint();
+    }
+
+    // Every shard's counter only grows, so the sum changes whenever any of them does
+    @Override
+    public long dataVersion() throws Exception {
+        long v = 0;
+        for (SQLiteStorage s : shards) v += s.dataVersion();
+        return v;
+    }
+
+    @Override
+    public void close() {
+        for (SQLiteStorage s : shards) s.close();
+    }
+
+    private interface Pager {
+        int page(SQLiteStorage shard, String afterId, int limit, Consumer<Job> consumer) throws Exception;
+    }
+
+    /** One shard's side of a keyset merge: a page of rows read ahead, and where the next page starts. */
+    private static final class Cursor {
+        final SQLiteStorage shard;
+        final ArrayDeque<Job> rows = new ArrayDeque<>();
+        String after;
+        boolean done;
+
+        Cursor(SQLiteStorage shard, String after) {
+            this.shard = shard;
+            this.after = after;
+        }
+    }
+
+    // Keyset pages across shards in id order: reads each shard a page at a time and merges the heads
+    private int mergeById(String afterId, int limit, Consumer<Job> consumer, Pager pager) throws Exception {
+        int page = limit > 0 ? Math.min(limit, MERGE_PAGE) : MERGE_PAGE;
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparing((Cursor c) -> c.rows.peekFirst().getId()));
+        for (SQLiteStorage s : shards) {
+            Cursor c = new Cursor(s, afterId);
+            if (fill(c, page, pager)) heads.add(c);
+        }
+        int n = 0;
+        while (!heads.isEmpty() && (limit <= 0 || n < limit)) {
+            Cursor c = heads.poll();
+            consumer.accept(c.rows.pollFirst());
+            n++;
+            if (fill(c, page, pager)) heads.add(c);
+        }
+        return n;
+    }
+
+    // Returns false once the shard has no more rows
+    private static boolean fill(Cursor c, int page, Pager pager) throws Exception {
+        if (c.rows.isEmpty() && !c.done) {
+            int got = pager.page(c.shard, c.after, page, c.rows::addLast);
+            if (got < page) c.done = true;
+            if (got > 0) c.after = c.rows.peekLast().getId();
+        }
+        return !c.rows.isEmpty();
+    }
+}
@@ -0,0 +1,187 @@
+package com.queuectl.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-queue and per-command-prefix rate limits and in-flight caps.
+ *
+ * <p>Each rule keeps its process-local state in lock-free counters: a GCRA token bucket
+ * (one {@link AtomicLong} holding the theoretical arrival time) and an in-flight count.
+ * Claims reserve from them with CAS before touching the database, and hand back what
+ * they didn't use. The same GCRA arithmetic is applied to the shared bucket rows when
+ * limits are enforced across processes.
+ */
+class Throttle {
+
+    static final class Rule {
+        final String key;          // "queue:<name>" or "prefix:<command prefix>"
+        final String match;        // queue name or command prefix
+        final boolean byQueue;
+        final long intervalMicros; // GCRA emission interval; 0 = no rate limit
+        final int burst;
+        final int maxInFlight;     // 0 = uncapped
+
+        private final AtomicLong tatMicros = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        Rule(boolean byQueue, String match, double ratePerSec, int maxInFlight) {
+            this.byQueue = byQueue;
+            this.match = match;
+            this.key = (byQueue ? "queue:" : "prefix:") + match;
+            this.intervalMicros = ratePerSec > 0 ? Math.max(1, (long) (1_000_000 / ratePerSec)) : 0;
+            // One second's worth of burst, at least one job
+            this.burst = ratePerSec > 0 ? Math.max(1, (int) Math.ceil(ratePerSec)) : 0;
+            this.maxInFlight = Math.max(0, maxInFlight);
+        }
+
+        boolean rateLimited() {
+            return intervalMicros > 0;
+        }
+
+        boolean capped() {
+            return maxInFlight > 0;
+        }
+
+        // How many of n jobs the bucket allows at nowMicros if its theoretical arrival time is tat
+        int tokens(long tat, long nowMicros, int n) {
+            if (!rateLimited()) return n;
+            long start = Math.max(tat, nowMicros);
+            long allowed = (nowMicros + burst * intervalMicros - start) / intervalMicros;
+            return (int) Math.max(0, Math.min(n, allowed));
+        }
+
+        long spend(long tat, long nowMicros, int k) {
+            return Math.max(tat, nowMicros) + k * intervalMicros;
+        }
+
+        // Reserves up to n local slots and tokens; returns how many were granted
+        int reserve(int n, long nowMicros) {
+            int slots = n;
+            if (capped()) {
+                while (true) {
+                    int cur = inFlight.get();
+                    slots = Math.max(0, Math.min(n, maxInFlight - cur));
+                    if (slots == 0 || inFlight.compareAndSet(cur, cur + slots)) break;
+                }
+            }
+            if (slots == 0 || !rateLimited()) return slots;
+            int granted;
+            while (true) {
+                long tat = tatMicros.get();
+                granted = tokens(tat, nowMicros, slots);
+                if (granted == 0 || tatMicros.compareAndSet(tat, spend(tat, nowMicros, granted))) break;
+            }
+            if (capped() && granted < slots) inFlight.addAndGet(granted - slots);
+            return granted;
+        }
+
+        // Returns reserved-but-unused capacity: tokens and slots
+        void unreserve(int n) {
+            if (n <= 0) return;
+            if (rateLimited()) tatMicros.addAndGet(-n * intervalMicros);
+            release(n);
+        }
+
+        // A job that held a slot has left RUNNING/PROCESSING
+        void release(int n) {
+            if (capped()) inFlight.addAndGet(-n);
+        }
+
+        // Earliest time a drained bucket has a token again, or 0 if it isn't drained
+        long nextTokenMicros(long nowMicros) {
+            if (!rateLimited()) return 0;
+            long due = tatMicros.get() - (burst - 1) * intervalMicros;
+            return due > nowMicros ? due : 0;
+        }
+    }
+
+    private final Map<String, Rule> queueRules = new HashMap<>();
+    private final List<Rule> prefixRules = new ArrayList<>();
+    private final List<Rule> all = new ArrayList<>();
+    final boolean global;
+    private final LongSupplier clock;
+
+    /**
+     * Specs are ';'-separated {@code key=rate:maxInFlight} entries, either part optional:
+     * {@code "payments=50:10;reports=:2"}. Rate is jobs per second.
+     */
+    Throttle(String queueSpec, String commandSpec, boolean global) {
+        this(queueSpec, commandSpec, global, () -> TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+    }
+
+    // clock: epoch micros; tests pass their own to step time by hand
+    Throttle(String queueSpec, String commandSpec, boolean global, LongSupplier clock) {
+        this.global = global;
+        this.clock = clock;
+        for (Rule r : parse(queueSpec, true)) queueRules.put(r.match, r);
+        prefixRules.addAll(parse(commandSpec, false));
+        // Longest prefix wins when several match
+        prefixRules.sort((a, b) -> b.match.length() - a.match.length());
+        all.addAll(queueRules.values());
+        all.addAll(prefixRules);
+    }
+
+    private static List<Rule> parse(String spec, boolean byQueue) {
+        if (spec == null || spec.isBlank()) return Collections.emptyList();
+        List<Rule> out = new ArrayList<>();
+        for (String entry : spec.split(";")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) continue;
+            String match = byQueue ? entry.substring(0, eq).trim() : entry.substring(0, eq).stripLeading();
+            String[] parts = entry.substring(eq + 1).split(":", 2);
+            try {
+                double rate = parts[0].isBlank() ? 0 : Double.parseDouble(parts[0].trim());
+                int cap = parts.length < 2 || parts[1].isBlank() ? 0 : Integer.parseInt(parts[1].trim());
+                if (rate > 0 || cap > 0) out.add(new Rule(byQueue, match, rate, cap));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring bad limit: " + entry);
+            }
+        }
+        return out;
+    }
+
+    boolean isEmpty() {
+        return all.isEmpty();
+    }
+
+    List<Rule> rules() {
+        return all;
+    }
+
+    Rule forQueue(String queue) {
+        return queueRules.get(queue);
+    }
+
+    List<Rule> prefixRules() {
+        return prefixRules;
+    }
+
+    Rule forCommand(String command) {
+        for (Rule r : prefixRules) {
+            if (command.startsWith(r.match)) return r;
+        }
+        return null;
+    }
+
+    // Earliest time any drained rate limit refills, in epoch micros; 0 if none is drained
+    long nextTokenMicros(long nowMicros) {
+        long next = 0;
+        for (Rule r : all) {
+            long t = r.nextTokenMicros(nowMicros);
+            if (t > 0 && (next == 0 || t < next)) next = t;
+        }
+        return next;
+    }
+
+    long nowMicros() {
+        return clock.getAsLong();
+    }
+}
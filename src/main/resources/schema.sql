@@ -2,16 +2,48 @@ CREATE TABLE IF NOT EXISTS jobs (
     id TEXT PRIMARY KEY,
     command TEXT NOT NULL,
     state TEXT NOT NULL,
-    retries INTEGER DEFAULT 0,
-    max_retries INTEGER DEFAULT 3,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    max_retries INTEGER NOT NULL DEFAULT 3,
+    created_at TEXT NOT NULL,
+    updated_at TEXT NOT NULL,
+    next_run_at TEXT,
     last_error TEXT,
-    created_at TEXT DEFAULT CURRENT_TIMESTAMP,
-    updated_at TEXT DEFAULT CURRENT_TIMESTAMP
+    output TEXT,
+    worker_id TEXT,
+    output_path TEXT,
+    queue TEXT NOT NULL DEFAULT 'default',
+    priority INTEGER NOT NULL DEFAULT 0,
+    lease_expires_at TEXT,
+    timeout_seconds INTEGER NOT NULL DEFAULT 0,
+    version INTEGER NOT NULL DEFAULT 0
 );
 
+-- Age order per state: retention and scheduled-retry lookups
+CREATE INDEX IF NOT EXISTS idx_jobs_state_created ON jobs (state, created_at, next_run_at, id);
+
+-- Claim path: per queue, seek straight to the highest-priority oldest PENDING row.
+-- Also lets the set of non-empty queues be found with one seek per queue.
+CREATE INDEX IF NOT EXISTS idx_jobs_queue_claim ON jobs (state, queue, priority DESC, created_at, id);
+
+-- Listing: keyset pages of one state in id order, read straight off the index with no sort
+CREATE INDEX IF NOT EXISTS idx_jobs_state_id ON jobs (state, id);
+
 CREATE TABLE IF NOT EXISTS dlq (
     id TEXT PRIMARY KEY,
     command TEXT NOT NULL,
     reason TEXT,
-    failed_at TEXT DEFAULT CURRENT_TIMESTAMP
+    failed_at TEXT DEFAULT CURRENT_TIMESTAMP,
+    queue TEXT NOT NULL DEFAULT 'default',
+    priority INTEGER NOT NULL DEFAULT 0,
+    timeout_seconds INTEGER NOT NULL DEFAULT 0,
+    max_retries INTEGER NOT NULL DEFAULT 3
+);
+
+-- Retention: oldest DLQ entries first
+CREATE INDEX IF NOT EXISTS idx_dlq_failed ON dlq (failed_at);
+
+-- Shared GCRA state for rate limits enforced across worker processes
+CREATE TABLE IF NOT EXISTS throttle_buckets (
+    rule TEXT PRIMARY KEY,
+    tat_us INTEGER NOT NULL
 );
@@ -0,0 +1,84 @@
+package com.queuectl.cli;
+
+import com.queuectl.core.Job;
+import com.queuectl.storage.InMemoryJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsServerTest {
+
+    // One sample line of the text format: name, optional labels, value
+    private static final Pattern SAMPLE = Pattern.compile(
+            "[a-zA-Z_:][a-zA-Z0-9_:]*(\\{[a-zA-Z_][a-zA-Z0-9_]*=\"[^\"]*\"(,[a-zA-Z_][a-zA-Z0-9_]*=\"[^\"]*\")*})? "
+                    + "(-?[0-9.]+([eE][-+]?[0-9]+)?|NaN|[+-]Inf)");
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private InMemoryJobRepository repo;
+    private MetricsServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        repo = new InMemoryJobRepository();
+        repo.init();
+        server = MetricsServer.start(0, new CommandHandler(repo));
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+        repo.close();
+    }
+
+    private HttpResponse<String> send(String method) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/metrics"))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void servesJobCountsInPrometheusTextFormat() throws Exception {
+        repo.save(new Job("a", "echo a", 3));
+        repo.save(new Job("b", "echo b", 3));
+
+        HttpResponse<String> r = send("GET");
+        assertEquals(200, r.statusCode());
+        assertEquals("text/plain; version=0.0.4; charset=utf-8", r.headers().firstValue("Content-Type").orElse(""));
+
+        String body = r.body();
+        assertTrue(body.endsWith("\n"));
+        Set<String> typed = new HashSet<>();
+        for (String line : body.split("\n")) {
+            if (line.startsWith("# TYPE ")) {
+                typed.add(line.split(" ")[2]);
+            } else if (!line.startsWith("# HELP ")) {
+                assertTrue(SAMPLE.matcher(line).matches(), line);
+                // Every sample belongs to a family declared above it
+                assertTrue(typed.contains(line.split("[{ ]")[0]), line);
+            }
+        }
+        assertTrue(body.contains("queuectl_jobs{state=\"PENDING\"} 2\n"), body);
+        assertTrue(body.contains("queuectl_dlq_jobs 0\n"), body);
+    }
+
+    @Test
+    void headHasNoBodyAndOtherMethodsAreRefused() throws Exception {
+        HttpResponse<String> head = send("HEAD");
+        assertEquals(200, head.statusCode());
+        assertEquals("", head.body());
+
+        assertEquals(405, send("POST").statusCode());
+    }
+}
@@ -0,0 +1,21 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.InMemoryJobRepository;
+import com.queuectl.storage.JobRepository;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+class InMemoryRetentionTest extends RetentionTest {
+
+    @Override
+    JobRepository create(Path dir) {
+        return new InMemoryJobRepository();
+    }
+
+    // An entry's failed_at is fixed when it is buried
+    @Override
+    boolean ageDLQ(String id, Instant failedAt) {
+        return false;
+    }
+}
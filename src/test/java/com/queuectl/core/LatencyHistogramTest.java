@@ -0,0 +1,122 @@
+package com.queuectl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    // The last bucket also holds everything past the cap
+    private static final int LAST = LatencyHistogram.index(Long.MAX_VALUE);
+
+    // v's bucket is the one whose [lower, upper) range contains it
+    private static void assertInItsBucket(long v) {
+        int i = LatencyHistogram.index(v);
+        long lower = i == 0 ? 0 : LatencyHistogram.upperBound(i - 1);
+        assertTrue(lower <= v, v + " below its bucket " + i);
+        if (i < LAST) assertTrue(v < LatencyHistogram.upperBound(i), v + " above its bucket " + i);
+    }
+
+    @Test
+    void bucketBoundaries() {
+        assertEquals(0, LatencyHistogram.index(0));
+        assertEquals(1, LatencyHistogram.index(1));
+        assertEquals(1, LatencyHistogram.upperBound(0));
+        assertEquals(2, LatencyHistogram.upperBound(1));
+        // Below eight every value has its own bucket
+        for (int v = 0; v < 8; v++) assertEquals(v, LatencyHistogram.index(v));
+
+        for (int exp = 3; exp < 63; exp++) {
+            long p = 1L << exp;
+            assertInItsBucket(p - 1);
+            assertInItsBucket(p);
+            assertInItsBucket(p + 1);
+            // A power of two always starts a bucket, which countBelow relies on
+            int i = LatencyHistogram.index(p);
+            if (i < LAST) {
+                assertEquals(p, LatencyHistogram.upperBound(i - 1));
+                assertEquals(i - 1, LatencyHistogram.index(p - 1));
+            }
+        }
+        assertEquals(LAST, LatencyHistogram.index(Long.MAX_VALUE));
+        assertEquals(LAST, LatencyHistogram.index(1L << 50));
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(1, s.counts[0]);
+        assertEquals(0, s.maxNanos);
+    }
+
+    @Test
+    void everyBucketIsWithinAnEighthOfItsLowerBound() {
+        for (int i = 8; i < LAST; i++) {
+            long lower = LatencyHistogram.upperBound(i - 1);
+            long width = LatencyHistogram.upperBound(i) - lower;
+            assertTrue(width * 8 <= lower, "bucket " + i);
+        }
+    }
+
+    // The reported percentile is never below the true value and at most 12.5% above it
+    private static void assertPercentiles(long[] values) {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v : values) h.record(v);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(values.length, s.count);
+        assertEquals(sorted[sorted.length - 1], s.maxNanos);
+        for (double q : new double[] {0.0, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+            long exact = sorted[(int) Math.max(0, Math.ceil(q * sorted.length) - 1)];
+            long reported = s.percentile(q);
+            assertTrue(reported >= exact, "p" + q + ": " + reported + " < " + exact);
+            assertTrue(reported - exact <= exact / 8, "p" + q + ": " + reported + " vs " + exact);
+        }
+    }
+
+    @Test
+    void percentilesOfAUniformRange() {
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) values[i] = 1_000L * (i + 1);
+        assertPercentiles(values);
+    }
+
+    @Test
+    void percentilesOfALongTailedDistribution() {
+        // Log-normal around 2 ms, the shape job latencies usually have
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) values[i] = (long) (2e6 * Math.exp(1.5 * random.nextGaussian()));
+        assertPercentiles(values);
+    }
+
+    @Test
+    void prometheusBucketsAreCumulative() {
+        LongAdder busy = new LongAdder();
+        for (long v = 1; v < 1L << 36; v <<= 1) Metrics.getInstance().recordExecution(busy, v);
+        StringBuilder sb = new StringBuilder();
+        Metrics.getInstance().writePrometheus(sb);
+
+        String prefix = "queuectl_execution_duration_seconds_bucket{le=\"";
+        long last = -1;
+        long inf = -1;
+        for (String line : sb.toString().split("\n")) {
+            if (!line.startsWith(prefix)) continue;
+            long n = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            assertTrue(n >= last, line);
+            last = n;
+            if (line.startsWith(prefix + "+Inf\"}")) inf = n;
+        }
+        assertTrue(inf > 0);
+        assertTrue(sb.toString().contains("queuectl_execution_duration_seconds_count " + inf + "\n"));
+    }
+}
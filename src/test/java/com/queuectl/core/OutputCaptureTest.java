@@ -0,0 +1,61 @@
+package com.queuectl.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputCaptureTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void aCharacterSplitBetweenHeadAndTailDecodesWhole() throws Exception {
+        try (OutputCapture c = new OutputCapture(dir.resolve("out.log"), 5, 5)) {
+            // The 2-byte é straddles the 5-byte head
+            c.write(utf8("abcdéxyz"));
+            assertFalse(c.spilled());
+            assertEquals("abcdéxyz", c.summary());
+        }
+    }
+
+    @Test
+    void truncatedOutputIsCutOnCodePointBoundaries() throws Exception {
+        Path spill = dir.resolve("out.log");
+        byte[] all = utf8("abcd€0123456789€xyz");
+        try (OutputCapture c = new OutputCapture(spill, 5, 5)) {
+            c.write(all);
+            assertTrue(c.spilled());
+            String summary = c.summary();
+            assertFalse(summary.contains("�"), summary);
+            assertTrue(summary.startsWith("abcd" + System.lineSeparator()), summary);
+            assertTrue(summary.endsWith(System.lineSeparator() + "xyz"), summary);
+            // Everything not shown, including the partial characters at either cut
+            assertTrue(summary.contains("[" + (all.length - 7) + " bytes omitted"), summary);
+        }
+        assertArrayEquals(all, Files.readAllBytes(spill));
+    }
+
+    @Test
+    void boundaries() {
+        byte[] euro = utf8("a€");
+        assertEquals(4, OutputCapture.headBoundary(euro, 4));
+        assertEquals(1, OutputCapture.headBoundary(euro, 3));
+        assertEquals(1, OutputCapture.headBoundary(euro, 2));
+        assertEquals(1, OutputCapture.headBoundary(euro, 1));
+        assertEquals(0, OutputCapture.tailBoundary(euro));
+        assertEquals(2, OutputCapture.tailBoundary(new byte[] {euro[2], euro[3], 'b'}));
+    }
+}
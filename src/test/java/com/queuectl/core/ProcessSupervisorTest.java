@@ -0,0 +1,64 @@
+package com.queuectl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessSupervisorTest {
+
+    private final ProcessSupervisor supervisor = ProcessSupervisor.shared();
+
+    @Test
+    void closeWaitsForATimeoutThatIsAlreadyFiring() throws Exception {
+        CountDownLatch firing = new CountDownLatch(1);
+        AtomicBoolean killed = new AtomicBoolean();
+        ProcessSupervisor.Watch watch = supervisor.arm(() -> {
+            firing.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            killed.set(true);
+        }, 1);
+
+        assertTrue(firing.await(5, TimeUnit.SECONDS));
+        watch.close();
+        // Had close() returned mid-kill, the kill would still be on its way to whatever runs next
+        assertTrue(killed.get());
+        assertTrue(watch.timedOut());
+    }
+
+    @Test
+    void aWatchClosedBeforeItsDeadlineNeverFires() throws Exception {
+        AtomicInteger fired = new AtomicInteger();
+        ProcessSupervisor.Watch watch = supervisor.arm(fired::incrementAndGet, 50);
+        watch.close();
+        Thread.sleep(200);
+        assertEquals(0, fired.get());
+        assertFalse(watch.timedOut());
+    }
+
+    @Test
+    void anInterruptedThreadIsClearOnceItsWatchIsClosed() throws Exception {
+        Thread self = Thread.currentThread();
+        ProcessSupervisor.Watch watch = supervisor.watchThread(self, 1);
+        try {
+            Thread.sleep(5_000);
+        } catch (InterruptedException expected) {
+            // The deadline
+        }
+        watch.close();
+        // What runInProcess does; nothing may be delivered after it
+        if (watch.timedOut()) Thread.interrupted();
+        Thread.sleep(50);
+        assertFalse(self.isInterrupted());
+    }
+}
@@ -0,0 +1,228 @@
+package com.queuectl.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.queuectl.storage.JobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * What a prune does to a store, whatever it is. Each engine gets a subclass that only says
+ * how to build an empty store.
+ */
+abstract class RetentionTest {
+
+    @TempDir
+    Path dir;
+    JobRepository repo;
+
+    // A new, empty store keeping its files under dir; init() is called by the test
+    abstract JobRepository create(Path dir) throws Exception;
+
+    // Backdates a DLQ entry's failed_at; false where the store has no way to
+    abstract boolean ageDLQ(String id, Instant failedAt) throws Exception;
+
+    @BeforeEach
+    void open() throws Exception {
+        ConfigManager cfg = ConfigManager.getInstance();
+        cfg.set("retention_completed_ttl_hours", "24");
+        cfg.set("retention_completed_max_rows", "0");
+        cfg.set("retention_dlq_ttl_hours", "24");
+        cfg.set("retention_dlq_max_rows", "0");
+        // Smaller than the row counts below, so purges span several batches
+        cfg.set("retention_batch_size", "2");
+        cfg.set("retention_batch_pause_ms", "0");
+        cfg.set("retention_archive_dir", dir.resolve("archive").toString());
+        repo = create(dir);
+        repo.init();
+    }
+
+    @AfterEach
+    void close() {
+        if (repo != null) repo.close();
+    }
+
+    static Job completed(String id, Duration age) {
+        Job job = new Job(id, "echo " + id, 4);
+        job.setState(JobState.COMPLETED);
+        // Millisecond precision, as SQLite stores it
+        job.setCreatedAt(Instant.now().minus(age).truncatedTo(ChronoUnit.MILLIS));
+        return job;
+    }
+
+    private Job dead(String id) throws Exception {
+        Job job = new Job(id, "false " + id, 2);
+        job.setQueue("batch");
+        job.setPriority(3);
+        job.setTimeoutSeconds(60);
+        job.setLastError("exit 1");
+        repo.save(job);
+        repo.moveToDLQ(job);
+        return job;
+    }
+
+    private static List<JsonObject> readArchive(Path file) throws Exception {
+        List<JsonObject> rows = new ArrayList<>();
+        Gson g = new Gson();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) rows.add(g.fromJson(line, JsonObject.class));
+        }
+        return rows;
+    }
+
+    private static Map<String, JsonObject> byId(List<JsonObject> rows) {
+        Map<String, JsonObject> out = new HashMap<>();
+        for (JsonObject row : rows) out.put(row.get("id").getAsString(), row);
+        return out;
+    }
+
+    @Test
+    void completedJobsPastTheirTTLAreArchivedAndDeleted() throws Exception {
+        for (int i = 0; i < 5; i++) repo.save(completed("old" + i, Duration.ofHours(48)));
+        repo.save(completed("new", Duration.ofHours(1)));
+        Job pending = new Job("waiting", "echo waiting", 3);
+        pending.setCreatedAt(Instant.now().minus(Duration.ofHours(48)));
+        repo.save(pending);
+
+        Retention.Report r = new Retention(repo).runOnce();
+
+        assertEquals(5, r.completedDeleted);
+        assertEquals(0, r.dlqDeleted);
+        for (int i = 0; i < 5; i++) assertTrue(repo.findById("old" + i).isEmpty());
+        // Not expired, and not COMPLETED at all
+        assertEquals(JobState.COMPLETED, repo.findById("new").orElseThrow().getState());
+        assertEquals(JobState.PENDING, repo.findById("waiting").orElseThrow().getState());
+        assertEquals(5, readArchive(r.archive).size());
+    }
+
+    @Test
+    void completedJobsOverTheRowCapGoOldestFirst() throws Exception {
+        ConfigManager.getInstance().set("retention_completed_ttl_hours", "0");
+        ConfigManager.getInstance().set("retention_completed_max_rows", "2");
+        for (int i = 0; i < 5; i++) repo.save(completed("c" + i, Duration.ofMinutes(50 - i)));
+
+        Retention.Report r = new Retention(repo).runOnce();
+
+        assertEquals(3, r.completedDeleted);
+        for (int i = 0; i < 3; i++) assertTrue(repo.findById("c" + i).isEmpty());
+        assertTrue(repo.findById("c3").isPresent());
+        assertTrue(repo.findById("c4").isPresent());
+    }
+
+    @Test
+    void dlqEntriesOverTheRowCapGoOldestFirst() throws Exception {
+        ConfigManager.getInstance().set("retention_dlq_ttl_hours", "0");
+        ConfigManager.getInstance().set("retention_dlq_max_rows", "1");
+        for (int i = 0; i < 3; i++) {
+            dead("d" + i);
+            // Distinct failed_at values, so "oldest" is well defined
+            Thread.sleep(5);
+        }
+
+        Retention.Report r = new Retention(repo).runOnce();
+
+        assertEquals(2, r.dlqDeleted);
+        assertTrue(repo.findInDLQ("d0").isEmpty());
+        assertTrue(repo.findInDLQ("d1").isEmpty());
+        assertTrue(repo.findInDLQ("d2").isPresent());
+    }
+
+    @Test
+    void dlqEntriesPastTheirTTLAreDeleted() throws Exception {
+        dead("old");
+        dead("new");
+        assumeTrue(ageDLQ("old", Instant.now().minus(Duration.ofHours(48))));
+
+        Retention.Report r = new Retention(repo).runOnce();
+
+        assertEquals(1, r.dlqDeleted);
+        assertTrue(repo.findInDLQ("old").isEmpty());
+        assertTrue(repo.findInDLQ("new").isPresent());
+    }
+
+    @Test
+    void nothingExpiredMeansNothingTouchedAndNoArchive() throws Exception {
+        repo.save(completed("a", Duration.ofHours(1)));
+        dead("d");
+
+        Retention.Report r = new Retention(repo).runOnce();
+
+        assertEquals(0, r.completedDeleted + r.dlqDeleted);
+        assertNull(r.archive);
+        assertTrue(repo.findById("a").isPresent());
+        assertTrue(repo.findInDLQ("d").isPresent());
+    }
+
+    @Test
+    void archivedRowsCarryEveryColumn() throws Exception {
+        Job job = completed("full", Duration.ofHours(48));
+        job.setQueue("emails");
+        job.setPriority(7);
+        job.setTimeoutSeconds(30);
+        job.setAttempts(2);
+        job.setLastError("first try failed");
+        job.setOutput("hello\n");
+        repo.save(job);
+        ConfigManager.getInstance().set("retention_dlq_ttl_hours", "0");
+        ConfigManager.getInstance().set("retention_dlq_max_rows", "1");
+        Job deadOld = dead("dead-old");
+        Thread.sleep(5);
+        dead("dead-new");
+
+        Retention.Report r = new Retention(repo).runOnce();
+        Map<String, JsonObject> rows = byId(readArchive(r.archive));
+        assertEquals(2, rows.size());
+
+        JsonObject a = rows.get("full");
+        assertEquals("jobs", a.get("table").getAsString());
+        assertEquals(job.getCommand(), a.get("command").getAsString());
+        assertEquals("COMPLETED", a.get("state").getAsString());
+        assertEquals(2, a.get("attempts").getAsInt());
+        assertEquals(4, a.get("max_retries").getAsInt());
+        assertEquals(job.getCreatedAt(), Instant.parse(a.get("created_at").getAsString()));
+        assertNotNull(a.get("updated_at"));
+        assertEquals("first try failed", a.get("last_error").getAsString());
+        assertEquals("hello\n", a.get("output").getAsString());
+        assertEquals("emails", a.get("queue").getAsString());
+        assertEquals(7, a.get("priority").getAsInt());
+        assertEquals(30, a.get("timeout_seconds").getAsInt());
+
+        JsonObject d = rows.get("dead-old");
+        assertEquals("dlq", d.get("table").getAsString());
+        assertEquals(deadOld.getCommand(), d.get("command").getAsString());
+        assertEquals("exit 1", d.get("reason").getAsString());
+        assertNotNull(Instant.parse(d.get("failed_at").getAsString()));
+        assertEquals("batch", d.get("queue").getAsString());
+        assertEquals(3, d.get("priority").getAsInt());
+        assertEquals(60, d.get("timeout_seconds").getAsInt());
+        assertEquals(2, d.get("max_retries").getAsInt());
+        // The jobs shape's names don't leak into DLQ lines
+        assertFalse(d.has("updated_at"));
+        assertFalse(d.has("last_error"));
+    }
+}
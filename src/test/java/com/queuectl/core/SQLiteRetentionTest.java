@@ -0,0 +1,36 @@
+package com.queuectl.core;
+
+import com.queuectl.storage.JobRepository;
+import com.queuectl.storage.SQLiteStorage;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+class SQLiteRetentionTest extends RetentionTest {
+
+    private Path db;
+
+    @Override
+    JobRepository create(Path dir) {
+        db = dir.resolve("queuectl.db");
+        ConfigManager.getInstance().set("database_path", db.toString());
+        return new SQLiteStorage();
+    }
+
+    // Behind the store's back, as a row that has sat in the DLQ would look
+    @Override
+    boolean ageDLQ(String id, Instant failedAt) throws Exception {
+        String ts = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC).format(failedAt);
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+             PreparedStatement ps = c.prepareStatement("UPDATE dlq SET failed_at = ? WHERE id = ?")) {
+            ps.setString(1, ts);
+            ps.setString(2, id);
+            return ps.executeUpdate() == 1;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.queuectl.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShellRunnerTest {
+
+    @TempDir
+    Path dir;
+    private ShellRunner runner;
+
+    @BeforeEach
+    void start() throws Exception {
+        runner = ShellRunner.start();
+    }
+
+    @AfterEach
+    void close() {
+        runner.close();
+    }
+
+    private String run(String command, int expectedExit) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(expectedExit, runner.run(command, out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void outputWithoutATrailingNewlineIsKeptExactly() throws Exception {
+        assertEquals("abc", run("printf abc", 0));
+        assertEquals("", run("true", 0));
+        assertEquals("next\n", run("echo next", 0));
+    }
+
+    @Test
+    void aJobsStderrIsItsOutputToo() throws Exception {
+        assertEquals("out\nerr\n", run("echo out; echo err >&2", 0));
+        assertTrue(run("if", 2).contains("syntax error"));
+    }
+
+    @Test
+    void nulBytesInOutputArePassedThrough() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, runner.run("printf 'a\\0b\\0\\0c'", out));
+        assertArrayEquals(new byte[] {'a', 0, 'b', 0, 0, 'c'}, out.toByteArray());
+
+        // A NUL followed by the start of the sentinel's token is still output
+        out.reset();
+        assertEquals(0, runner.run("printf 'x\\0QUEUECTL-y'", out));
+        assertArrayEquals("x\0QUEUECTL-y".getBytes(StandardCharsets.US_ASCII), out.toByteArray());
+    }
+
+    @Test
+    void exitEndsOnlyTheJobsSubshell() throws Exception {
+        run("cd / && export LEAK=1 && exit 3", 3);
+        assertTrue(runner.isAlive());
+        assertEquals("unset\n", run("echo ${LEAK:-unset}", 0));
+        assertNotEquals("/\n", run("pwd", 0));
+    }
+
+    @Test
+    void aJobThatKillsItsOwnSubshellLeavesTheHelperRunning() throws Exception {
+        assertEquals("before", run("printf before; kill -9 $BASHPID; echo after", 137));
+        assertTrue(runner.isAlive());
+        assertEquals("ok\n", run("echo ok", 0));
+    }
+
+    @Test
+    void helpersAreReplacedAfterMaxJobs() {
+        ConfigManager cfg = ConfigManager.getInstance();
+        cfg.set("shell_mode", "persistent");
+        cfg.set("shell_runner_max_jobs", "2");
+        cfg.set("output_dir", dir.toString());
+        try {
+            JobExecutor executor = new JobExecutor();
+            // $$ in a subshell is the helper's own pid
+            String[] pids = new String[5];
+            for (int i = 0; i < pids.length; i++) {
+                JobResult r = executor.run(new Job("pid-" + i, "echo $$", 0));
+                assertEquals(0, r.getExitCode());
+                pids[i] = r.getOutput().trim();
+            }
+            assertEquals(pids[0], pids[1]);
+            assertNotEquals(pids[1], pids[2]);
+            assertEquals(pids[2], pids[3]);
+            assertNotEquals(pids[3], pids[4]);
+        } finally {
+            cfg.set("shell_mode", "fork");
+            cfg.set("shell_runner_max_jobs", "1000");
+        }
+    }
+}
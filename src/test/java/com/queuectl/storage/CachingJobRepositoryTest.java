@@ -0,0 +1,85 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingJobRepositoryTest extends JobRepositoryContractTest {
+
+    // Runs inside the delegate's updateJobState, after its write; lets a test slip a second write in
+    private Runnable duringUpdate;
+
+    @Override
+    JobRepository create(Path dir) {
+        SQLiteStorage delegate = new SQLiteStorage(dir.resolve("queuectl.db").toString(), null) {
+            @Override
+            public void updateJobState(String id, JobState state) throws Exception {
+                super.updateJobState(id, state);
+                if (duringUpdate != null) duringUpdate.run();
+            }
+        };
+        return new CachingJobRepository(delegate, 100, 60_000);
+    }
+
+    private CachingJobRepository cache() {
+        return (CachingJobRepository) repo;
+    }
+
+    @Test
+    void unchangedRowsAreServedFromTheCache() throws Exception {
+        repo.save(job("a", "default", 0, 0));
+        repo.findById("a");
+        long hits = cache().getHitCount();
+
+        assertEquals(JobState.PENDING, repo.getJobState("a"));
+        assertEquals(hits + 1, cache().getHitCount());
+        assertEquals(0, cache().getStaleCount());
+    }
+
+    @Test
+    void aWriteFromAnotherProcessInvalidatesTheEntry() throws Exception {
+        repo.save(job("a", "default", 0, 0));
+        assertEquals(JobState.PENDING, repo.findById("a").orElseThrow().getState());
+
+        // Its own connection pool, so the cache sees the commit only through dataVersion
+        try (SQLiteStorage other = new SQLiteStorage(dir.resolve("queuectl.db").toString(), null)) {
+            other.init();
+            other.updateJobAttempts("a", 3);
+            other.updateJobState("a", JobState.COMPLETED);
+        }
+
+        Job job = repo.findById("a").orElseThrow();
+        assertEquals(JobState.COMPLETED, job.getState());
+        assertEquals(3, job.getAttempts());
+        assertEquals(1, cache().getStaleCount());
+        // Reloaded, so the next read is a plain hit again
+        long hits = cache().getHitCount();
+        assertEquals(JobState.COMPLETED, repo.getJobState("a"));
+        assertEquals(hits + 1, cache().getHitCount());
+    }
+
+    @Test
+    void advanceDropsAnEntryThatAnotherWriteReplaced() throws Exception {
+        repo.save(job("a", "default", 0, 0));
+        duringUpdate = () -> {
+            try {
+                repo.updateJobAttempts("a", 5);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        repo.updateJobState("a", JobState.COMPLETED);
+        duringUpdate = null;
+
+        // Neither write could be applied to the other's entry, so the row is read again
+        long misses = cache().getMissCount();
+        Job job = repo.findById("a").orElseThrow();
+        assertEquals(misses + 1, cache().getMissCount());
+        assertEquals(JobState.COMPLETED, job.getState());
+        assertEquals(5, job.getAttempts());
+    }
+}
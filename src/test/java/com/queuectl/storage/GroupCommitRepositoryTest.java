@@ -0,0 +1,155 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitRepositoryTest extends JobRepositoryContractTest {
+
+    // Every batch the delegate was asked to commit, in order
+    private final List<List<JobTransition>> batches = new CopyOnWriteArrayList<>();
+    // Holds the flusher inside the commit of the batch containing "gate" until counted down
+    private final CountDownLatch gateEntered = new CountDownLatch(1);
+    private final CountDownLatch gateReleased = new CountDownLatch(1);
+
+    @Override
+    JobRepository create(Path dir) {
+        SQLiteStorage delegate = new SQLiteStorage(dir.resolve("queuectl.db").toString(), null) {
+            @Override
+            public void applyTransitions(List<JobTransition> transitions) throws Exception {
+                batches.add(transitions);
+                for (JobTransition t : transitions) {
+                    if (t.getJobId().equals("gate")) {
+                        gateEntered.countDown();
+                        gateReleased.await();
+                    }
+                    if (t.getJobId().startsWith("bad")) throw new SQLException("disk I/O error");
+                }
+                super.applyTransitions(transitions);
+            }
+        };
+        return new GroupCommitRepository(delegate, GroupCommitRepository.Durability.SYNC, 1, 256);
+    }
+
+    // Runs a write on its own thread, keeping whatever it threw
+    private Thread write(String id, JobState state, List<Throwable> errors) {
+        Thread t = new Thread(() -> {
+            try {
+                repo.updateJobState(id, state);
+                errors.add(new AssertionError("no failure"));
+            } catch (Exception e) {
+                errors.add(e);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    // Waits until the thread is parked waiting for its batch to commit
+    private static void awaitParked(Thread t) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (t.getState() != Thread.State.TIMED_WAITING && t.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "writer never parked");
+            Thread.sleep(5);
+        }
+    }
+
+    // Occupies the flusher with the "gate" batch, so the writes that follow all land in the next one
+    private Thread holdFlusher() throws Exception {
+        repo.save(job("gate", "default", 0, 0));
+        Thread gate = new Thread(() -> {
+            try {
+                repo.updateJobState("gate", JobState.PROCESSING);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        gate.start();
+        assertTrue(gateEntered.await(5, TimeUnit.SECONDS));
+        return gate;
+    }
+
+    @Test
+    void aFailedCommitThrowsToEveryWriterInItsBatch() throws Exception {
+        for (int i = 0; i < 3; i++) repo.save(job("bad" + i, "default", 0, 0));
+        Thread gate = holdFlusher();
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Thread t = write("bad" + i, JobState.PROCESSING, errors);
+            awaitParked(t);
+            writers.add(t);
+        }
+        int before = batches.size();
+        gateReleased.countDown();
+        gate.join();
+        for (Thread t : writers) t.join();
+
+        // One commit for all three, and each writer was told it failed
+        assertEquals(before + 1, batches.size());
+        assertEquals(3, batches.get(before).size());
+        assertEquals(3, errors.size());
+        for (Throwable e : errors) {
+            assertTrue(e.getMessage().startsWith("Group commit failed"), e.toString());
+            assertTrue(e.getCause() instanceof SQLException, e.toString());
+        }
+        // The failure belongs to that batch only
+        repo.updateJobState("gate", JobState.COMPLETED);
+        assertEquals(JobState.COMPLETED, repo.findById("gate").orElseThrow().getState());
+        assertEquals(JobState.PENDING, repo.findById("bad0").orElseThrow().getState());
+    }
+
+    @Test
+    void transitionsForOneJobMergeAndKeepTheLastState() throws Exception {
+        repo.save(job("x", "default", 0, 0));
+        Thread gate = holdFlusher();
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Thread first = apply(JobTransition.update("x", JobState.PROCESSING, 2, null, null, null), errors);
+        awaitParked(first);
+        Thread second = apply(JobTransition.update("x", JobState.COMPLETED, null, null, "done", null), errors);
+        awaitParked(second);
+
+        gateReleased.countDown();
+        gate.join();
+        first.join();
+        second.join();
+        assertTrue(errors.isEmpty(), errors.toString());
+
+        // One transition for x: the later state and output, the earlier attempts
+        List<JobTransition> merged = batches.get(batches.size() - 1);
+        assertEquals(1, merged.size());
+        assertEquals(JobState.COMPLETED, merged.get(0).getState());
+        assertEquals(2, merged.get(0).getAttempts());
+        assertEquals("done", merged.get(0).getOutput());
+
+        Job x = repo.findById("x").orElseThrow();
+        assertEquals(JobState.COMPLETED, x.getState());
+        assertEquals(2, x.getAttempts());
+    }
+
+    private Thread apply(JobTransition transition, List<Throwable> errors) {
+        Thread t = new Thread(() -> {
+            try {
+                repo.applyTransitions(List.of(transition));
+            } catch (Exception e) {
+                errors.add(e);
+            }
+        });
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,274 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobResult;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What every {@link JobRepository} must do, whatever it stores jobs in. Each engine and
+ * decorator gets a subclass that only says how to build an empty store.
+ */
+abstract class JobRepositoryContractTest {
+
+    @TempDir
+    Path dir;
+    JobRepository repo;
+
+    // A new, empty store keeping its files under dir; init() is called by the test
+    abstract JobRepository create(Path dir) throws Exception;
+
+    // False for stores that only order claims within each of their partitions
+    boolean claimsInGlobalOrder() {
+        return true;
+    }
+
+    @BeforeEach
+    void open() throws Exception {
+        ConfigManager cfg = ConfigManager.getInstance();
+        // The shortest lease there is, so reaping can be tested without a long sleep
+        cfg.set("lease_seconds", "1");
+        cfg.set("queue_weights", "");
+        cfg.set("queue_limits", "");
+        cfg.set("command_limits", "");
+        repo = create(dir);
+        repo.init();
+    }
+
+    @AfterEach
+    void close() {
+        if (repo != null) repo.close();
+    }
+
+    static Job job(String id, String queue, int priority, long msAgo) {
+        return job(id, queue, priority, msAgo, 1);
+    }
+
+    static Job job(String id, String queue, int priority, long msAgo, int maxRetries) {
+        Job job = new Job(id, "echo " + id, maxRetries);
+        job.setQueue(queue);
+        job.setPriority(priority);
+        job.setCreatedAt(Instant.now().minusMillis(msAgo));
+        return job;
+    }
+
+    static List<String> ids(List<Job> jobs) {
+        List<String> out = new ArrayList<>();
+        for (Job j : jobs) out.add(j.getId());
+        return out;
+    }
+
+    @Test
+    void saveKeepsEveryField() throws Exception {
+        Job job = job("a", "emails", 7, 0);
+        job.setTimeoutSeconds(30);
+        repo.save(job);
+
+        Job stored = repo.findById("a").orElseThrow();
+        assertEquals("echo a", stored.getCommand());
+        assertEquals("emails", stored.getQueue());
+        assertEquals(7, stored.getPriority());
+        assertEquals(30, stored.getTimeoutSeconds());
+        assertEquals(1, stored.getMaxRetries());
+        assertEquals(JobState.PENDING, stored.getState());
+        assertTrue(repo.findById("missing").isEmpty());
+    }
+
+    @Test
+    void saveRejectsAnExistingId() throws Exception {
+        repo.save(job("a", "default", 0, 0));
+        assertThrows(Exception.class, () -> repo.save(job("a", "default", 0, 0)));
+        repo.saveAll(List.of(job("b", "default", 0, 0), job("c", "default", 0, 0)));
+        assertEquals(3L, repo.countByState().get(JobState.PENDING));
+    }
+
+    @Test
+    void claimBatchTakesHighestPriorityThenOldest() throws Exception {
+        repo.save(job("a", "default", 0, 300));
+        repo.save(job("b", "default", 5, 100));
+        repo.save(job("c", "default", 0, 200));
+        repo.save(job("d", "default", 0, 50));
+
+        List<Job> claimed = repo.claimBatch("w1", 3);
+        assertEquals(3, claimed.size());
+        if (claimsInGlobalOrder()) assertEquals(List.of("b", "a", "c"), ids(claimed));
+        for (Job j : claimed) assertEquals(JobState.RUNNING, repo.getJobState(j.getId()));
+        assertEquals(1, repo.claimBatch("w1", 5).size());
+        assertTrue(repo.claimBatch("w1", 5).isEmpty());
+    }
+
+    @Test
+    void claimBatchSkipsJobsThatAreNotDue() throws Exception {
+        repo.save(job("a", "default", 0, 0));
+        repo.claimBatch("w1", 1);
+        repo.scheduleRetry("a", 1, Instant.now().plusSeconds(60));
+
+        assertTrue(repo.claimBatch("w1", 1).isEmpty());
+        assertTrue(repo.nextScheduledRunAt().isPresent());
+        assertEquals(JobState.PENDING, repo.getJobState("a"));
+    }
+
+    @Test
+    void claimBatchSplitsEqualQueuesEvenly() throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            jobs.add(job("x" + i, "x", 0, 0));
+            jobs.add(job("y" + i, "y", 0, 0));
+        }
+        repo.saveAll(jobs);
+
+        List<Job> claimed = repo.claimBatch("w1", 20);
+        assertEquals(20, claimed.size());
+        if (claimsInGlobalOrder()) assertEquals(10, claimed.stream().filter(j -> j.getQueue().equals("x")).count());
+    }
+
+    @Test
+    void applyTransitionsMovesJobsThroughTheirStates() throws Exception {
+        repo.saveAll(List.of(job("a", "default", 0, 0), job("b", "default", 0, 0)));
+        List<Job> claimed = repo.claimBatch("w1", 2);
+        Job a = claimed.get(0);
+        Job b = claimed.get(1);
+
+        repo.applyTransitions(List.of(JobTransition.started(a), JobTransition.started(b)));
+        assertEquals(JobState.PROCESSING, repo.getJobState(a.getId()));
+
+        repo.applyTransitions(List.of(
+                JobTransition.completed(a, new JobResult(0, "done", null)),
+                JobTransition.dead(b, 1, new JobResult(1, "", "boom"))));
+        assertEquals(JobState.COMPLETED, repo.getJobState(a.getId()));
+        // Only the archive reads load output
+        assertEquals("done", repo.findOldest(JobState.COMPLETED, null, 1).get(0).getOutput());
+        assertTrue(repo.findById(b.getId()).isEmpty());
+        assertEquals(JobState.DEAD, repo.findInDLQ(b.getId()).orElseThrow().getState());
+        assertEquals(1L, repo.countByState().get(JobState.COMPLETED));
+        assertEquals(1L, repo.countDLQ());
+    }
+
+    @Test
+    void releaseJobsPutsClaimsBack() throws Exception {
+        repo.saveAll(List.of(job("a", "default", 0, 200), job("b", "default", 0, 100)));
+        repo.claimBatch("w1", 2);
+
+        repo.releaseJobs(List.of("a", "b"));
+        assertEquals(JobState.PENDING, repo.getJobState("a"));
+        assertEquals(2, repo.claimBatch("w2", 2).size());
+    }
+
+    @Test
+    void renewLeasesCountsOnlyTheWorkersOwnJobs() throws Exception {
+        repo.saveAll(List.of(job("a", "default", 0, 200), job("b", "default", 0, 100), job("c", "default", 0, 0)));
+        repo.claimBatch("w1", 2);
+        repo.claimBatch("w2", 1);
+
+        assertEquals(2, repo.renewLeases("w1"));
+        assertEquals(1, repo.renewLeases("w2"));
+        assertEquals(0, repo.renewLeases("w3"));
+    }
+
+    @Test
+    void reapExpiredLeasesRequeuesOrBuriesTheJob() throws Exception {
+        Job once = job("once", "default", 0, 200, 0);
+        repo.saveAll(List.of(once, job("again", "default", 0, 100)));
+        repo.claimBatch("w1", 2);
+        repo.applyTransitions(List.of(JobTransition.started(repo.findById("once").orElseThrow())));
+
+        assertEquals(0, repo.reapExpiredLeases());
+        Thread.sleep(1200);
+        assertEquals(2, repo.reapExpiredLeases());
+        // Running with no attempts to spare, so the lost attempt was its last
+        assertTrue(repo.findById("once").isEmpty());
+        assertTrue(repo.findInDLQ("once").isPresent());
+        assertEquals(JobState.PENDING, repo.getJobState("again"));
+    }
+
+    @Test
+    void moveToDLQKeepsTheJobsSettings() throws Exception {
+        Job job = job("a", "reports", -2, 0, 4);
+        job.setTimeoutSeconds(9);
+        repo.save(job);
+        repo.moveToDLQ(job);
+
+        assertTrue(repo.findById("a").isEmpty());
+        Job dead = repo.findInDLQ("a").orElseThrow();
+        assertEquals(JobState.DEAD, dead.getState());
+        assertEquals("reports", dead.getQueue());
+        assertEquals(-2, dead.getPriority());
+        assertEquals(9, dead.getTimeoutSeconds());
+        assertEquals(4, dead.getMaxRetries());
+        List<Job> page = new ArrayList<>();
+        repo.forEachInDLQ(null, 0, page::add);
+        assertEquals(List.of("a"), ids(page));
+    }
+
+    @Test
+    void retryFromDLQRequeuesTheJobOnce() throws Exception {
+        Job job = job("a", "reports", 3, 0, 4);
+        repo.save(job);
+        repo.moveToDLQ(job);
+
+        Job retried = repo.retryFromDLQ("a").orElseThrow();
+        assertEquals(JobState.PENDING, retried.getState());
+        assertEquals(0, retried.getAttempts());
+        assertTrue(repo.retryFromDLQ("a").isEmpty());
+        assertFalse(repo.findInDLQ("a").isPresent());
+        Job stored = repo.findById("a").orElseThrow();
+        assertEquals("reports", stored.getQueue());
+        assertEquals(4, stored.getMaxRetries());
+        assertEquals(List.of("a"), ids(repo.claimBatch("w1", 1)));
+    }
+
+    @Test
+    void forEachByStatePagesInIdOrder() throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 24; i >= 0; i--) jobs.add(job(String.format("p%02d", i), "default", 0, 0));
+        repo.saveAll(jobs);
+        repo.save(job("other", "default", 0, 0));
+        repo.claimBatch("w1", 1);
+
+        List<String> seen = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String after = null;
+        while (true) {
+            List<Job> page = new ArrayList<>();
+            int n = repo.forEachByState(JobState.PENDING, after, 10, page::add);
+            assertEquals(page.size(), n);
+            pageSizes.add(n);
+            seen.addAll(ids(page));
+            if (n < 10) break;
+            after = page.get(page.size() - 1).getId();
+        }
+        List<String> sorted = new ArrayList<>(seen);
+        sorted.sort(null);
+        assertEquals(sorted, seen);
+        assertEquals(List.of(10, 10, 5), pageSizes);
+        assertEquals(25, seen.size());
+    }
+
+    @Test
+    void countByStateFollowsEveryMove() throws Exception {
+        repo.saveAll(List.of(job("a", "default", 0, 300), job("b", "default", 0, 200), job("c", "default", 0, 100)));
+        Job a = repo.claimBatch("w1", 1).get(0);
+        repo.applyTransitions(List.of(JobTransition.completed(a, new JobResult(0, "", null))));
+        repo.deleteJobById("c");
+
+        assertEquals(1L, repo.countByState().get(JobState.COMPLETED));
+        assertEquals(1L, repo.countByState().get(JobState.PENDING));
+        assertEquals(1, repo.deleteJobs(JobState.COMPLETED, List.of("a", "b")));
+        assertEquals(0L, repo.countByState().getOrDefault(JobState.COMPLETED, 0L));
+    }
+}
@@ -0,0 +1,192 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobResult;
+import com.queuectl.core.JobState;
+import com.queuectl.core.JobTransition;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalJobRepositoryTest extends JobRepositoryContractTest {
+
+    @Override
+    JobRepository create(Path dir) {
+        ConfigManager cfg = ConfigManager.getInstance();
+        cfg.set("journal_dir", dir.resolve("journal").toString());
+        cfg.set("journal_segment_mb", "1");
+        // Checkpoints only when a test asks for one
+        cfg.set("journal_checkpoint_mb", "1024");
+        cfg.set("journal_fsync", "os");
+        return new JournalJobRepository();
+    }
+
+    private void reopen() throws Exception {
+        repo.close();
+        repo = null;
+        repo = create(dir);
+        repo.init();
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> s = Files.list(dir.resolve("journal"))) {
+            return s.filter(p -> p.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    // Damages the last record of the newest segment the way a crash or bad disk would
+    private void damageLastRecord(boolean truncate) throws IOException {
+        List<Path> segments = files("segment-");
+        try (FileChannel ch = FileChannel.open(segments.get(segments.size() - 1),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            int pos = 0;
+            int last = -1;
+            while (map.getInt(pos) > 0) {
+                last = pos;
+                pos += 8 + map.getInt(pos);
+            }
+            int len = map.getInt(last);
+            if (truncate) {
+                // Only the first half of the record reached the disk
+                for (int i = last + 8 + len / 2; i < last + 8 + len; i++) map.put(i, (byte) 0);
+            } else {
+                int at = last + 8 + len - 1;
+                map.put(at, (byte) (map.get(at) ^ 0x5a));
+            }
+            map.force();
+        }
+    }
+
+    private Map<String, List<String>> contents() throws Exception {
+        Map<String, List<String>> out = new TreeMap<>();
+        for (JobState state : JobState.values()) {
+            if (state == JobState.DEAD) continue;
+            List<String> ids = new ArrayList<>();
+            repo.forEachByState(state, null, 0, j -> ids.add(j.getId()));
+            if (!ids.isEmpty()) out.put(state.name(), ids);
+        }
+        List<String> dead = new ArrayList<>();
+        repo.forEachInDLQ(null, 0, j -> dead.add(j.getId()));
+        out.put("DLQ", dead);
+        return out;
+    }
+
+    @Test
+    void replayDropsATruncatedTrailingRecord() throws Exception {
+        replayDropsADamagedTrailingRecord(true);
+    }
+
+    @Test
+    void replayDropsACorruptTrailingRecord() throws Exception {
+        replayDropsADamagedTrailingRecord(false);
+    }
+
+    private void replayDropsADamagedTrailingRecord(boolean truncate) throws Exception {
+        repo.save(job("a", "default", 0, 0));
+        repo.save(job("b", "default", 0, 0));
+        repo.close();
+        repo = null;
+        damageLastRecord(truncate);
+
+        repo = create(dir);
+        repo.init();
+        assertTrue(repo.findById("a").isPresent());
+        assertTrue(repo.findById("b").isEmpty());
+
+        // New appends replace the damaged bytes and survive the next restart
+        repo.save(job("c", "default", 0, 0));
+        reopen();
+        assertTrue(repo.findById("a").isPresent());
+        assertTrue(repo.findById("b").isEmpty());
+        assertTrue(repo.findById("c").isPresent());
+    }
+
+    @Test
+    void replayAppliesSegmentsOnTopOfTheSnapshot() throws Exception {
+        List<Job> early = new ArrayList<>();
+        for (int i = 0; i < 200; i++) early.add(job(String.format("e%03d", i), "default", 0, 0));
+        repo.saveAll(early);
+        List<JobTransition> done = new ArrayList<>();
+        for (Job j : repo.claimBatch("w1", 50)) done.add(JobTransition.completed(j, new JobResult(0, "", null)));
+        repo.applyTransitions(done);
+
+        // Checkpoints race a writer, so each snapshot is taken while records land in the new segment
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    Job j = job(String.format("w%04d", i), "default", 0, 0);
+                    repo.save(j);
+                    if (i % 10 == 0) repo.moveToDLQ(j);
+                    if (i % 10 == 1) repo.deleteJobById(j.getId());
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        int checkpoints = 0;
+        while (writer.isAlive() || checkpoints == 0) {
+            repo.checkpoint();
+            checkpoints++;
+        }
+        writer.join();
+        assertNull(failure.get());
+
+        // And a tail that only the segment after the last snapshot holds
+        repo.save(job("late", "default", 0, 0));
+        repo.deleteJobById("e199");
+        repo.retryFromDLQ("w0000");
+        Map<String, List<String>> before = contents();
+
+        reopen();
+        assertEquals(1, files("snapshot-").size());
+        assertEquals(before, contents());
+        assertEquals(JobState.COMPLETED, repo.getJobState(done.get(0).getJobId()));
+    }
+
+    @Test
+    void deletesSurviveACheckpoint() throws Exception {
+        List<Job> jobs = List.of(job("a", "default", 0, 0), job("b", "default", 0, 0),
+                job("c", "default", 0, 0), job("d", "default", 0, 0));
+        repo.saveAll(jobs);
+        repo.deleteJobById("a");
+        repo.moveToDLQ(jobs.get(1));
+        repo.deleteFromDLQ("b");
+        repo.checkpoint();
+        // Recorded only after the snapshot that still holds them
+        repo.deleteJobById("c");
+        repo.moveToDLQ(jobs.get(3));
+
+        reopen();
+        for (String id : List.of("a", "b", "c")) {
+            assertTrue(repo.findById(id).isEmpty(), id);
+            assertFalse(repo.findInDLQ(id).isPresent(), id);
+        }
+        assertTrue(repo.findById("d").isEmpty());
+        assertTrue(repo.findInDLQ("d").isPresent());
+
+        repo.checkpoint();
+        reopen();
+        assertEquals(0L, repo.countByState().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(1L, repo.countDLQ());
+    }
+}
@@ -0,0 +1,11 @@
+package com.queuectl.storage;
+
+import java.nio.file.Path;
+
+class SQLiteStorageTest extends JobRepositoryContractTest {
+
+    @Override
+    JobRepository create(Path dir) {
+        return new SQLiteStorage(dir.resolve("queuectl.db").toString(), null);
+    }
+}
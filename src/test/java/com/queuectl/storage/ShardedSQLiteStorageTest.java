@@ -0,0 +1,87 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobState;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedSQLiteStorageTest extends JobRepositoryContractTest {
+
+    @Override
+    JobRepository create(Path dir) {
+        ConfigManager.getInstance().set("database_path", dir.resolve("queuectl.db").toString());
+        return new ShardedSQLiteStorage(4);
+    }
+
+    // Priorities and queue weights hold within each shard
+    @Override
+    boolean claimsInGlobalOrder() {
+        return false;
+    }
+
+    // Walks every page of limit rows after afterId, checking each full page is exactly limit long
+    private List<String> walk(JobState state, String afterId, int limit) throws Exception {
+        List<String> seen = new ArrayList<>();
+        String after = afterId;
+        while (true) {
+            List<Job> page = new ArrayList<>();
+            int n = state == null
+                    ? repo.forEachInDLQ(after, limit, page::add)
+                    : repo.forEachByState(state, after, limit, page::add);
+            assertEquals(page.size(), n);
+            seen.addAll(ids(page));
+            if (limit <= 0 || n < limit) return seen;
+            after = page.get(n - 1).getId();
+        }
+    }
+
+    @Test
+    void mergedPagesMatchOneSortedListAtEveryBoundary() throws Exception {
+        // Enough that every shard holds more than one internal merge page (500 rows)
+        List<Job> jobs = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2600; i++) {
+            String id = String.format("j%05d", i);
+            jobs.add(job(id, "default", 0, 0));
+            expected.add(id);
+        }
+        repo.saveAll(jobs);
+        // Claimed rows are RUNNING and must not show up in the PENDING pages
+        Set<String> claimed = new HashSet<>(ids(repo.claimBatch("w1", 40)));
+        expected.removeAll(claimed);
+
+        for (int limit : new int[] {0, 1, 7, 499, 500, 501, 2560, 5000}) {
+            assertEquals(expected, walk(JobState.PENDING, null, limit), "limit " + limit);
+        }
+        // Starting between two ids, on the last id, and past the end
+        String first = expected.get(0);
+        assertEquals(expected.subList(1, expected.size()), walk(JobState.PENDING, first, 500));
+        assertEquals(expected.subList(1, expected.size()), walk(JobState.PENDING, first + "~", 7));
+        assertTrue(walk(JobState.PENDING, expected.get(expected.size() - 1), 10).isEmpty());
+        assertTrue(walk(JobState.PENDING, "k", 10).isEmpty());
+    }
+
+    @Test
+    void mergedDLQPagesAreInIdOrder() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Job job = job(String.format("d%03d", i), "default", 0, 0);
+            repo.save(job);
+            repo.moveToDLQ(job);
+            expected.add(job.getId());
+        }
+
+        for (int limit : new int[] {0, 1, 7, 30, 59, 60, 61}) {
+            assertEquals(expected, walk(null, null, limit), "limit " + limit);
+        }
+    }
+}
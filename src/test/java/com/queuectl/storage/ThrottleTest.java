@@ -0,0 +1,155 @@
+package com.queuectl.storage;
+
+import com.queuectl.core.ConfigManager;
+import com.queuectl.core.Job;
+import com.queuectl.core.JobResult;
+import com.queuectl.core.JobTransition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ThrottleTest {
+
+    private static final long SECOND = 1_000_000;
+
+    @TempDir
+    Path dir;
+
+    // Epoch micros that only move when a test says so
+    private final AtomicLong clock = new AtomicLong(1_700_000_000L * SECOND);
+
+    private Throttle throttle(String queueSpec, String commandSpec, boolean global) {
+        return new Throttle(queueSpec, commandSpec, global, clock::get);
+    }
+
+    @Test
+    void aRateAllowsOneSecondOfBurstThenNothing() {
+        Throttle.Rule r = throttle("api=5:", "", false).forQueue("api");
+        long now = clock.get();
+
+        assertEquals(5, r.reserve(10, now));
+        assertEquals(0, r.reserve(1, now));
+        // Unused reservations go back
+        r.unreserve(2);
+        assertEquals(2, r.reserve(10, now));
+    }
+
+    @Test
+    void aDrainedBucketRefillsAtTheConfiguredRate() {
+        Throttle t = throttle("api=5:", "", false);
+        Throttle.Rule r = t.forQueue("api");
+        long now = clock.get();
+        r.reserve(5, now);
+
+        // One token every 200 ms, reported as the next refill time
+        assertEquals(now + SECOND / 5, t.nextTokenMicros(now));
+        assertEquals(0, r.reserve(1, now + SECOND / 5 - 1));
+        assertEquals(1, r.reserve(1, now + SECOND / 5));
+        assertEquals(0, r.reserve(1, now + SECOND / 5));
+        // Idle long enough and the bucket is full again, but never more than full
+        assertEquals(5, r.reserve(10, now + 10 * SECOND));
+        assertEquals(0, t.nextTokenMicros(now + 20 * SECOND));
+    }
+
+    @Test
+    void anInFlightCapFreesASlotWhenAJobFinishes() {
+        Throttle.Rule r = throttle("reports=:2", "", false).forQueue("reports");
+        long now = clock.get();
+
+        assertEquals(2, r.reserve(3, now));
+        assertEquals(0, r.reserve(1, now));
+        r.release(1);
+        assertEquals(1, r.reserve(3, now));
+    }
+
+    @Test
+    void theLongestMatchingCommandPrefixWins() {
+        Throttle t = throttle("", "curl=1:;curl https://partner=5:; sleep=:1", false);
+
+        assertEquals("curl https://partner", t.forCommand("curl https://partner/api?x=1").match);
+        assertEquals("curl", t.forCommand("curl https://example.com").match);
+        // Spaces after a ';' separate entries; they aren't part of the prefix
+        assertEquals("sleep", t.forCommand("sleep 5").match);
+        assertNull(t.forCommand("wget https://partner"));
+    }
+
+    @Test
+    void badEntriesAreSkipped() {
+        Throttle t = throttle("api=fast:;ok=1:;none=:;=3:1", "", false);
+
+        assertNull(t.forQueue("api"));
+        assertNull(t.forQueue("none"));
+        assertEquals(1, t.rules().size());
+    }
+
+    // --- throttle_scope=global: two SQLiteStorage instances on one file stand in for two processes ---
+
+    private SQLiteStorage open(Throttle throttle) throws Exception {
+        ConfigManager.getInstance().set("queue_weights", "");
+        SQLiteStorage s = new SQLiteStorage(dir.resolve("queuectl.db").toString(), throttle);
+        s.init();
+        return s;
+    }
+
+    private static void enqueue(JobRepository repo, String queue, int n) throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Job job = new Job(queue + "-" + i, "echo " + i, 0);
+            job.setQueue(queue);
+            jobs.add(job);
+        }
+        repo.saveAll(jobs);
+    }
+
+    @Test
+    void processesShareOneBucket() throws Exception {
+        try (SQLiteStorage a = open(throttle("api=2:", "", true));
+             SQLiteStorage b = open(throttle("api=2:", "", true))) {
+            enqueue(a, "api", 6);
+
+            assertEquals(2, a.claimBatch("a", 10).size());
+            // b's own bucket is full; the shared row is what stops it
+            assertEquals(0, b.claimBatch("b", 10).size());
+
+            clock.addAndGet(SECOND / 2);
+            assertEquals(1, b.claimBatch("b", 10).size());
+            assertEquals(0, a.claimBatch("a", 10).size());
+        }
+    }
+
+    @Test
+    void processesShareOneInFlightCap() throws Exception {
+        try (SQLiteStorage a = open(throttle("slow=:1", "", true));
+             SQLiteStorage b = open(throttle("slow=:1", "", true))) {
+            enqueue(a, "slow", 3);
+
+            List<Job> claimed = a.claimBatch("a", 10);
+            assertEquals(1, claimed.size());
+            assertEquals(0, b.claimBatch("b", 10).size());
+
+            Job job = claimed.get(0);
+            a.applyTransitions(List.of(JobTransition.started(job)));
+            assertEquals(0, b.claimBatch("b", 10).size());
+            a.applyTransitions(List.of(JobTransition.completed(job, new JobResult(0, "ok", null))));
+            assertEquals(1, b.claimBatch("b", 10).size());
+        }
+    }
+
+    @Test
+    void processScopeKeepsBucketsApart() throws Exception {
+        try (SQLiteStorage a = open(throttle("api=2:", "", false));
+             SQLiteStorage b = open(throttle("api=2:", "", false))) {
+            enqueue(a, "api", 6);
+
+            assertEquals(2, a.claimBatch("a", 10).size());
+            assertEquals(2, b.claimBatch("b", 10).size());
+        }
+    }
+}